@@ -0,0 +1,28 @@
+package com.example.demo.config;
+
+import com.example.demo.util.WarpClock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+@Configuration
+public class ClockConfig {
+
+    @Bean
+    @Profile("!replay")
+    public Clock clock() {
+        return Clock.systemUTC();
+    }
+
+    // Replay runs on virtual time; the replay service moves it to the recorded posts' timeline
+    @Bean
+    @Profile("replay")
+    public WarpClock warpClock(@Value("${replay.warp-factor:0}") double warpFactor) {
+        return new WarpClock(Instant.now(), warpFactor, ZoneOffset.UTC);
+    }
+}
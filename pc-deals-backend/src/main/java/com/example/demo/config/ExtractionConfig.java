@@ -0,0 +1,52 @@
+package com.example.demo.config;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExtractionConfig {
+
+    @Value("${openai.extraction.max-in-flight:4}")
+    private int maxInFlight;
+
+    @Value("${openai.extraction.requests-per-minute:180}")
+    private int requestsPerMinute;
+
+    // One worker per in-flight request; a full page (100 posts) fits in the queue, anything
+    // beyond that runs on the submitting thread so the fetcher slows down instead of piling up.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService extractionExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+            maxInFlight, maxInFlight,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(100),
+            runnable -> {
+                Thread thread = new Thread(runnable, "llm-extract-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    // Replaces the fixed Thread.sleep(300) between OpenAI calls: bursts up to maxInFlight,
+    // then refills evenly over the minute.
+    @Bean
+    public Bucket extractionPacer() {
+        return Bucket.builder()
+            .addLimit(Bandwidth.classic(maxInFlight, Refill.greedy(requestsPerMinute, Duration.ofMinutes(1))))
+            .build();
+    }
+}
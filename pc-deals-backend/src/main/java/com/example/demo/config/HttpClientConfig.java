@@ -0,0 +1,186 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.DefaultHttpRequestRetryStrategy;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound HTTP for Reddit and OpenAI: one pooled keep-alive connection manager (capped per
+ * host), gzip/deflate negotiated and decoded by the client, connect and read timeouts so a hung
+ * socket can't stall the scheduler, and a per-host latency histogram on every call.
+ *
+ * HttpClient 5 classic speaks HTTP/1.1 only; with keep-alive pooling the TLS handshake is paid
+ * once per connection, which is what mattered here.
+ *
+ * Each upstream also gets a {@link RequestBudget} in front of its RestTemplate, so the scheduler,
+ * backfill jobs and token refreshes draw from one rate limit instead of racing each other into it.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    // The client's default strategy also resends 429/503 on its own, behind the request budget's back;
+    // those are left to the budget, only resends after an IO error on an idempotent request remain
+    private static final DefaultHttpRequestRetryStrategy IO_RETRIES_ONLY =
+        new DefaultHttpRequestRetryStrategy(1, TimeValue.ofSeconds(1)) {
+            @Override
+            public boolean retryRequest(HttpResponse response, int execCount, HttpContext context) {
+                return false;
+            }
+        };
+
+    @Value("${http.client.max-connections:40}")
+    private int maxConnections;
+
+    @Value("${http.client.max-connections-per-host:10}")
+    private int maxConnectionsPerHost;
+
+    @Value("${http.client.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${reddit.http.read-timeout-ms:15000}")
+    private long redditReadTimeoutMs;
+
+    @Value("${openai.http.read-timeout-ms:60000}")
+    private long openAiReadTimeoutMs;
+
+    @Value("${reddit.http.max-attempts:5}")
+    private int redditMaxAttempts;
+
+    // Reddit's window is 10 minutes, so a caller may have to sit out the rest of one
+    @Value("${reddit.http.max-wait-seconds:600}")
+    private long redditMaxWaitSeconds;
+
+    @Value("${openai.http.max-attempts:3}")
+    private int openAiMaxAttempts;
+
+    @Value("${openai.http.max-wait-seconds:120}")
+    private long openAiMaxWaitSeconds;
+
+    @Value("${http.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${http.circuit.open-seconds:15}")
+    private long circuitOpenSeconds;
+
+    @Value("${http.circuit.max-open-seconds:300}")
+    private long circuitMaxOpenSeconds;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager outboundConnectionManager() {
+        return connectionManager(maxConnections, maxConnectionsPerHost, Duration.ofMillis(connectTimeoutMs),
+            Duration.ofMillis(Math.max(redditReadTimeoutMs, openAiReadTimeoutMs)));
+    }
+
+    @Bean
+    public RequestBudget redditRequestBudget(MeterRegistry meterRegistry) {
+        return new RequestBudget("reddit", redditMaxAttempts, Duration.ofSeconds(redditMaxWaitSeconds),
+            circuitFailureThreshold, Duration.ofSeconds(circuitOpenSeconds), Duration.ofSeconds(circuitMaxOpenSeconds),
+            meterRegistry);
+    }
+
+    @Bean
+    public RequestBudget openAiRequestBudget(MeterRegistry meterRegistry) {
+        return new RequestBudget("openai", openAiMaxAttempts, Duration.ofSeconds(openAiMaxWaitSeconds),
+            circuitFailureThreshold, Duration.ofSeconds(circuitOpenSeconds), Duration.ofSeconds(circuitMaxOpenSeconds),
+            meterRegistry);
+    }
+
+    @Bean
+    public RestTemplate redditRestTemplate(PoolingHttpClientConnectionManager outboundConnectionManager, MeterRegistry meterRegistry,
+                                           @Qualifier("redditRequestBudget") RequestBudget budget) {
+        return restTemplate(outboundConnectionManager, Duration.ofMillis(redditReadTimeoutMs), meterRegistry, budget);
+    }
+
+    @Bean
+    public RestTemplate openAiRestTemplate(PoolingHttpClientConnectionManager outboundConnectionManager, MeterRegistry meterRegistry,
+                                           @Qualifier("openAiRequestBudget") RequestBudget budget) {
+        return restTemplate(outboundConnectionManager, Duration.ofMillis(openAiReadTimeoutMs), meterRegistry, budget);
+    }
+
+    public static PoolingHttpClientConnectionManager connectionManager(int maxTotal, int maxPerHost,
+                                                                       Duration connectTimeout, Duration socketTimeout) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxTotal)
+            .setMaxConnPerRoute(maxPerHost)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(socketTimeout))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                .setTimeToLive(TimeValue.ofMinutes(5))
+                .build())
+            .build();
+    }
+
+    /**
+     * Builds a RestTemplate on the shared pool. Each caller gets its own response timeout; the
+     * pool (and its idle keep-alive connections) is shared.
+     */
+    public static RestTemplate restTemplate(PoolingHttpClientConnectionManager connectionManager,
+                                            Duration readTimeout, MeterRegistry meterRegistry) {
+        return restTemplate(connectionManager, readTimeout, meterRegistry, null);
+    }
+
+    /**
+     * Same, with the budget's interceptor outermost so the latency histogram only measures time
+     * on the wire, not time spent waiting for the budget.
+     */
+    public static RestTemplate restTemplate(PoolingHttpClientConnectionManager connectionManager,
+                                            Duration readTimeout, MeterRegistry meterRegistry, RequestBudget budget) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setConnectionManagerShared(true)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(10))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build())
+            .evictIdleConnections(TimeValue.ofSeconds(30))
+            .setRetryStrategy(IO_RETRIES_ONLY)
+            .build();
+
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        if (budget != null) restTemplate.getInterceptors().add(budget.interceptor());
+        restTemplate.getInterceptors().add(latencyInterceptor(meterRegistry));
+        return restTemplate;
+    }
+
+    private static ClientHttpRequestInterceptor latencyInterceptor(MeterRegistry meterRegistry) {
+        return (request, body, execution) -> {
+            long start = System.nanoTime();
+            String outcome = "IO_ERROR";
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                outcome = String.valueOf(response.getStatusCode().value());
+                return response;
+            } finally {
+                Timer.builder("outbound.http.requests")
+                    .description("Outbound HTTP latency by host")
+                    .tag("host", String.valueOf(request.getURI().getHost()))
+                    .tag("status", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Request budget for one upstream, shared by every call that goes through its RestTemplate.
+ *
+ * Reddit reports X-Ratelimit-Remaining and X-Ratelimit-Reset (seconds until the window ends) on
+ * every response; calls are spaced so the remaining requests spread evenly over the rest of the
+ * window instead of burning it and then collecting 429s. A Retry-After on a 429 or 503 (Reddit or
+ * OpenAI) holds every caller until it has passed. Failures without one back off exponentially.
+ *
+ * After failure-threshold 429/5xx/IO errors in a row the circuit opens: nobody calls for open-for,
+ * then a single probe goes through. A failed probe doubles the wait (up to max-open-for), a success
+ * closes the circuit. Callers wait their turn up to max-wait and only then get
+ * {@link UnavailableException}, so runs slow down to what the upstream allows rather than fail.
+ */
+public class RequestBudget {
+    private static final Logger logger = Logger.getLogger(RequestBudget.class.getName());
+
+    private static final long BACKOFF_BASE_MILLIS = 1000;
+
+    /** The next request could not be sent within max-wait. */
+    public static class UnavailableException extends RuntimeException {
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private final String upstream;
+    private final int maxAttempts;
+    private final long maxWaitMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long maxOpenMillis;
+
+    private final Timer waitTimer;
+    private final Counter retries;
+    private final Counter circuitOpened;
+
+    // All times are System.nanoTime() based milliseconds; guarded by this
+    private long remaining = -1; // -1 until the upstream tells us
+    private long windowEndsAt;
+    private long nextSlotAt;
+    private long blockedUntil;
+    private int consecutiveFailures;
+    private boolean open;
+    private boolean probing;
+    private long openUntil;
+    private long currentOpenMillis;
+
+    public RequestBudget(String upstream, int maxAttempts, Duration maxWait, int failureThreshold,
+                         Duration openFor, Duration maxOpenFor, MeterRegistry meterRegistry) {
+        this.upstream = upstream;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxWaitMillis = maxWait.toMillis();
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openFor.toMillis();
+        this.maxOpenMillis = Math.max(openMillis, maxOpenFor.toMillis());
+        this.currentOpenMillis = openMillis;
+
+        waitTimer = Timer.builder("outbound.ratelimit.wait")
+            .description("Time calls waited for the upstream's request budget")
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        retries = Counter.builder("outbound.retries")
+            .description("Calls retried after a 429, 5xx or IO error")
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        circuitOpened = Counter.builder("outbound.circuit.opened")
+            .description("Times the circuit opened after sustained 429/5xx/IO errors")
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        Gauge.builder("outbound.ratelimit.remaining", this, budget -> budget.remainingInWindow())
+            .description("Requests left in the upstream's current rate-limit window, -1 if unknown")
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+        Gauge.builder("outbound.circuit.open", this, budget -> budget.isOpen() ? 1 : 0)
+            .tag("upstream", upstream)
+            .register(meterRegistry);
+    }
+
+    /** Waits for the budget before each request and feeds every response back into it. */
+    public ClientHttpRequestInterceptor interceptor() {
+        return (request, body, execution) -> {
+            try {
+                acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the " + upstream + " request budget");
+            }
+            ClientHttpResponse response;
+            try {
+                response = execution.execute(request, body);
+            } catch (IOException e) {
+                recordFailure();
+                throw e;
+            }
+            record(response.getStatusCode().value(), response.getHeaders());
+            return response;
+        };
+    }
+
+    /**
+     * Runs the call, retrying 429s, 5xx and IO errors up to max-attempts times. There's no sleep
+     * here: the next attempt waits in {@link #acquire()} for whatever the failure asked for.
+     */
+    public <T> T withRetries(Supplier<T> call) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts || !isRetryable(e) || Thread.currentThread().isInterrupted()) throw e;
+                retries.increment();
+                logger.info(upstream + " call failed (" + e.getMessage() + "), retrying, attempt "
+                    + (attempt + 1) + " of " + maxAttempts);
+            }
+        }
+    }
+
+    public static boolean isRetryable(RuntimeException e) {
+        if (e instanceof HttpStatusCodeException status) {
+            int code = status.getStatusCode().value();
+            return code == 429 || code >= 500;
+        }
+        return e instanceof ResourceAccessException;
+    }
+
+    /** Blocks until the next request may go out, or throws after waiting max-wait for it. */
+    public synchronized void acquire() throws InterruptedException {
+        long start = now();
+        long giveUpAt = start + maxWaitMillis;
+        while (true) {
+            long now = now();
+            long readyAt = readyAt(now);
+            if (readyAt <= now) {
+                take(now);
+                break;
+            }
+            if (now >= giveUpAt) {
+                throw new UnavailableException(upstream + " budget had no request free for "
+                    + maxWaitMillis / 1000 + "s" + (open ? " (circuit open)" : ""));
+            }
+            // Responses notify, so a probe's result or fresh headers wake the waiters early
+            wait(Math.max(1, Math.min(readyAt, giveUpAt) - now));
+        }
+        waitTimer.record(now() - start, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void record(int status, HttpHeaders headers) {
+        long now = now();
+        Double reportedRemaining = number(headers.getFirst("X-Ratelimit-Remaining"));
+        Double resetSeconds = number(headers.getFirst("X-Ratelimit-Reset"));
+        if (reportedRemaining != null && resetSeconds != null) {
+            remaining = (long) Math.floor(reportedRemaining);
+            windowEndsAt = now + (long) (resetSeconds * 1000);
+        }
+
+        if (status == 429 || status >= 500) {
+            Long retryAfter = status == 429 || status == 503 ? retryAfterMillis(headers) : null;
+            if (retryAfter != null) blockedUntil = Math.max(blockedUntil, now + retryAfter);
+            failed(now, retryAfter != null || remaining == 0);
+        } else {
+            succeeded();
+        }
+        notifyAll();
+    }
+
+    public synchronized void recordFailure() {
+        failed(now(), false);
+        notifyAll();
+    }
+
+    public synchronized Map<String, Object> describe() {
+        long now = now();
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("upstream", upstream);
+        state.put("remaining", remainingInWindow());
+        state.put("window_resets_in_ms", remaining < 0 ? null : Math.max(0, windowEndsAt - now));
+        state.put("blocked_for_ms", Math.max(0, blockedUntil - now));
+        state.put("consecutive_failures", consecutiveFailures);
+        state.put("circuit_open", open);
+        state.put("circuit_closes_in_ms", open ? Math.max(0, openUntil - now) : null);
+        return state;
+    }
+
+    // Callers hold the monitor
+
+    private long readyAt(long now) {
+        // Once the window has rolled over we don't know the budget until the next response
+        if (remaining >= 0 && now >= windowEndsAt) remaining = -1;
+        long readyAt = Math.max(nextSlotAt, blockedUntil);
+        if (remaining == 0) readyAt = Math.max(readyAt, windowEndsAt);
+        if (open) {
+            // While the probe is out everyone else waits for its result
+            readyAt = Math.max(readyAt, probing ? now + 1000 : openUntil);
+        }
+        return readyAt;
+    }
+
+    private void take(long now) {
+        if (open) probing = true;
+        long spacing = 0;
+        if (remaining > 0) {
+            spacing = (windowEndsAt - now) / remaining;
+            remaining--;
+        }
+        nextSlotAt = now + spacing;
+    }
+
+    private void failed(long now, boolean upstreamSaidWhen) {
+        consecutiveFailures++;
+        if (!upstreamSaidWhen) {
+            long backoff = Math.min(BACKOFF_BASE_MILLIS << Math.min(consecutiveFailures - 1, 16), maxOpenMillis);
+            blockedUntil = Math.max(blockedUntil, now + backoff);
+        }
+        if (open && probing) {
+            probing = false;
+            currentOpenMillis = Math.min(currentOpenMillis * 2, maxOpenMillis);
+            openUntil = now + currentOpenMillis;
+            logger.warning(upstream + " probe failed, circuit stays open for " + currentOpenMillis / 1000 + "s");
+        } else if (!open && consecutiveFailures >= failureThreshold) {
+            open = true;
+            currentOpenMillis = openMillis;
+            openUntil = now + currentOpenMillis;
+            circuitOpened.increment();
+            logger.warning(upstream + " failed " + consecutiveFailures + " times in a row, circuit open for "
+                + currentOpenMillis / 1000 + "s");
+        }
+    }
+
+    private void succeeded() {
+        if (open) logger.info(upstream + " answered again, circuit closed");
+        consecutiveFailures = 0;
+        open = false;
+        probing = false;
+        currentOpenMillis = openMillis;
+    }
+
+    private synchronized long remainingInWindow() {
+        return remaining >= 0 && now() >= windowEndsAt ? -1 : remaining;
+    }
+
+    private synchronized boolean isOpen() {
+        return open;
+    }
+
+    /** Retry-After as delta-seconds or an HTTP date, null if absent or unreadable. */
+    static Long retryAfterMillis(HttpHeaders headers) {
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return null;
+        Double seconds = number(value);
+        if (seconds != null) return Math.max(0, (long) (seconds * 1000));
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Double number(String value) {
+        if (value == null) return null;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
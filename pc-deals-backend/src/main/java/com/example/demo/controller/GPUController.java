@@ -1,11 +1,19 @@
 package com.example.demo.controller;
 
 import com.example.demo.service.GPUService;
+import com.example.demo.service.MarketSnapshotService;
+import com.example.demo.service.OutlierPurgeService;
+import com.example.demo.service.PriceStatsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +24,18 @@ public class GPUController {
     @Autowired
     private GPUService gpuService;
 
+    @Autowired
+    private PriceStatsService priceStatsService;
+
+    @Autowired
+    private OutlierPurgeService outlierPurgeService;
+
+    @Autowired
+    private MarketSnapshotService marketSnapshotService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     //GET ALL OR SPECIFIC MODEL (listings?model=3080)
     @GetMapping("/listings")
     public List<Map<String, Object>> getListings(@RequestParam(required = false) String model) {
@@ -26,20 +46,29 @@ public class GPUController {
         }
     }
     
-    //GET ALL AVERAGE PRICES OR FOR SPECIFIC MODEL (market-prices?model=3080)
+    //GET ALL AVERAGE PRICES OR FOR SPECIFIC MODEL (market-prices?model=3080), OPTIONALLY ONLY SOLD OR UNSOLD LISTINGS (&status=sold)
     @GetMapping("/market-prices")
-    public Object getMarketPrices(@RequestParam(required = false) String model) {
-        if (model != null && !model.isEmpty()) {
-            return gpuService.getMarketPrice(model);  // Returns Map<String, Object>
-        } else {
-            return gpuService.getAllMarketPrices();   // Returns List<Map<String, Object>>
+    public Object getMarketPrices(@RequestParam(required = false) String model,
+                                  @RequestParam(defaultValue = "all") String status) {
+        try {
+            if (model != null && !model.isEmpty()) {
+                return gpuService.getMarketPrice(model, status);  // Returns Map<String, Object>
+            } else {
+                return gpuService.getAllMarketPrices(status);   // Returns List<Map<String, Object>>
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
-    //GET PRICE HISTORY FOR SPECIFIC MODEL
+    //GET PRICE HISTORY FOR SPECIFIC MODEL, PER DAY OR ROLLED UP (price-history?model=3080&interval=week|month)
     @GetMapping("/price-history")
-    public List<Map<String, Object>> getPriceHistory(@RequestParam String model) {
-        return gpuService.getPriceHistory(model);
+    public Object getPriceHistory(@RequestParam String model, @RequestParam(defaultValue = "day") String interval) {
+        try {
+            return gpuService.getPriceHistory(model, interval);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     //GET PRICE ANALYSIS FOR SPECIFIC MODEL AND PRICE
@@ -48,33 +77,114 @@ public class GPUController {
         return gpuService.analyzePrice(model, price);
     }
 
-    //GET OUTLIERS ABOVE/BELOW THRESHOLD
-    @GetMapping("/listings/outliers")
-    public List<Map<String, Object>> getOutliers(@RequestParam(defaultValue = "1.75") double threshold) {
-        return gpuService.getPriceOutliers(threshold);
+    //COMPARE THE IN-MEMORY 7-DAY PRICE STATS BEHIND PRICE ANALYSIS WITH SQL (reseed=true REBUILDS THEM IF THEY DISAGREE)
+    @GetMapping("/price-stats/check")
+    public Map<String, Object> checkPriceStats(@RequestParam(defaultValue = "false") boolean reseed) {
+        Map<String, Object> result = priceStatsService.check();
+        if (reseed && !((List<?>) result.get("mismatches")).isEmpty()) {
+            priceStatsService.reseed();
+            result.put("reseeded", true);
+        }
+        return result;
+    }
+
+    //STREAM OUTLIERS AS NDJSON, ONE LISTING PER LINE: ABOVE/BELOW AVERAGE * THRESHOLD (band=mean),
+    //OR MORE THAN k ROBUST Z-SCORES FROM THE MEDIAN (band=mad&k=3.5)
+    @GetMapping(value = "/listings/outliers", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> getOutliers(@RequestParam(defaultValue = "1.75") double threshold,
+                                                             @RequestParam(defaultValue = "mean") String band,
+                                                             @RequestParam(defaultValue = "3.5") double k) {
+        GPUService.OutlierBand outlierBand;
+        try {
+            outlierBand = GPUService.OutlierBand.valueOf(band.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        double cutoff = outlierBand == GPUService.OutlierBand.MEAN ? threshold : k;
+        StreamingResponseBody body = out -> {
+            try {
+                gpuService.forEachPriceOutlier(outlierBand, cutoff, listing -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(listing));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
     }
 
-    //DELETE OUTLIERS
+    //PURGE OUTLIERS (same as POST /outlier-purges with band=mean): MOVES THEM TO QUARANTINE IN THE BACKGROUND
+    //AND RETURNS THE JOB WITHOUT WAITING FOR IT
     @GetMapping("/listings/delete-outliers")
-    public Map<String, Object> deleteOutliers(@RequestParam(defaultValue = "1.75") double threshold) {
-        int deleted = gpuService.deletePriceOutliers(threshold);
-        return Map.of(
-            "threshold_multiplier", threshold,
-            "deleted_count", deleted,
-            "message", "Outliers deleted successfully"
-        );
+    public ResponseEntity<Map<String, Object>> deleteOutliers(@RequestParam(defaultValue = "1.75") double threshold) {
+        return startOutlierPurge(threshold, "mean", 3.5);
     }
 
-    @GetMapping("/market-snapshot")
-    public ResponseEntity<Map<String, Object>> getMarketSnapshot() {
+    //OUTLIER PURGE JOBS: ONE MODEL AT A TIME, IN CHUNKS, INTO gpu_prices_quarantine
+    @PostMapping("/outlier-purges")
+    public ResponseEntity<Map<String, Object>> startOutlierPurge(@RequestParam(defaultValue = "1.75") double threshold,
+                                                                 @RequestParam(defaultValue = "mean") String band,
+                                                                 @RequestParam(defaultValue = "3.5") double k) {
         try {
-            Map<String, Object> snapshot = gpuService.getMarketSnapshot();
-            return ResponseEntity.ok(snapshot);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
-                Map.of("error", "Failed to generate market snapshot")
-            );
+            GPUService.OutlierBand outlierBand = GPUService.OutlierBand.valueOf(band.toUpperCase());
+            Map<String, Object> job = outlierPurgeService.start(outlierBand,
+                outlierBand == GPUService.OutlierBand.MEAN ? threshold : k);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
+
+    @GetMapping("/outlier-purges")
+    public List<Map<String, Object>> listOutlierPurges(@RequestParam(defaultValue = "20") int limit) {
+        return outlierPurgeService.recent(limit);
+    }
+
+    //PROGRESS AND ROWS PER SECOND OF ONE PURGE
+    @GetMapping("/outlier-purges/{id}")
+    public ResponseEntity<Map<String, Object>> getOutlierPurge(@PathVariable long id) {
+        Map<String, Object> job = outlierPurgeService.status(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @DeleteMapping("/outlier-purges/{id}")
+    public ResponseEntity<Map<String, Object>> cancelOutlierPurge(@PathVariable long id) {
+        Map<String, Object> job = outlierPurgeService.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    //MOVE A PURGE'S QUARANTINED LISTINGS BACK INTO gpu_prices
+    @PostMapping("/outlier-purges/{id}/restore")
+    public ResponseEntity<Map<String, Object>> restoreOutlierPurge(@PathVariable long id) {
+        Map<String, Object> job = outlierPurgeService.restore(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    //PRECOMPUTED MARKET SNAPSHOT, REBUILT AFTER INGESTION COMMITS; SERVED AS STORED BYTES WITH A VERSION ETAG
+    @GetMapping("/market-snapshot")
+    public ResponseEntity<byte[]> getMarketSnapshot(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        MarketSnapshotService.Snapshot snapshot = marketSnapshotService.current();
+        String etag = "\"" + snapshot.version() + "-" + (snapshot.builtAt() == null ? 0 : snapshot.builtAt().toEpochMilli()) + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(snapshot.json());
+    }
+
+    //VERSION, AGE AND STALENESS OF THE SERVED SNAPSHOT
+    @GetMapping("/market-snapshot/status")
+    public Map<String, Object> getMarketSnapshotStatus() {
+        return marketSnapshotService.describe();
+    }
+
+    //REBUILD THE SNAPSHOT NOW INSTEAD OF WAITING FOR THE NEXT INGESTION BATCH
+    @PostMapping("/market-snapshot/refresh")
+    public Map<String, Object> refreshMarketSnapshot() {
+        return marketSnapshotService.refresh();
+    }
 }
@@ -1,9 +1,22 @@
 package com.example.demo.controller;
 
+import com.example.demo.service.BackfillJobService;
+import com.example.demo.service.ExtractionCache;
+import com.example.demo.service.ListingStatusRefresher;
+import com.example.demo.service.ListingYieldClassifier;
+import com.example.demo.service.RedditScraperService;
 import com.example.demo.service.RedditService;
 import com.example.demo.model.GPU;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import java.util.logging.Logger;
 import java.time.Instant;
@@ -16,14 +29,73 @@ import java.util.Map;
 public class RedditController {
     private static final Logger logger = Logger.getLogger(RedditController.class.getName());
     private final RedditService redditService;
+    private final ExtractionCache extractionCache;
+    private final ObjectProvider<RedditScraperService> redditScraperService;
+    private final BackfillJobService backfillJobService;
+    private final ListingYieldClassifier listingYieldClassifier;
+    private final ObjectProvider<ListingStatusRefresher> listingStatusRefresher;
 
-    public RedditController(RedditService redditService) {
+    @Value("${reddit.backfill.default-max-listings:275}")
+    private int defaultMaxListings;
+
+    public RedditController(RedditService redditService, ExtractionCache extractionCache,
+                            ObjectProvider<RedditScraperService> redditScraperService,
+                            BackfillJobService backfillJobService,
+                            ListingYieldClassifier listingYieldClassifier,
+                            ObjectProvider<ListingStatusRefresher> listingStatusRefresher) {
         this.redditService = redditService;
+        this.extractionCache = extractionCache;
+        this.redditScraperService = redditScraperService;
+        this.backfillJobService = backfillJobService;
+        this.listingYieldClassifier = listingYieldClassifier;
+        this.listingStatusRefresher = listingStatusRefresher;
     }
 
+    //START A BACKFILL JOB (same as POST /backfill/jobs) AND RETURN ITS STATUS WITHOUT WAITING FOR IT
     @GetMapping("/fetch-save")
-    public List<GPU> fetchAndSave() {
-        return redditService.fetchAndSaveGPUListings();
+    public ResponseEntity<Map<String, Object>> fetchAndSave(@RequestParam(required = false) Integer maxListings) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .body(backfillJobService.start(null, null, maxListings != null ? maxListings : defaultMaxListings));
+    }
+
+    //BACKFILL BY TIME RANGE (since/until as ISO instants) AND/OR LISTING COUNT
+    @PostMapping("/backfill/jobs")
+    public ResponseEntity<Map<String, Object>> startBackfill(@RequestParam(required = false) String since,
+                                                             @RequestParam(required = false) String until,
+                                                             @RequestParam(required = false) Integer maxListings) {
+        try {
+            Map<String, Object> job = backfillJobService.start(
+                since == null ? null : Instant.parse(since),
+                until == null ? null : Instant.parse(until),
+                maxListings);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/backfill/jobs")
+    public List<Map<String, Object>> listBackfills(@RequestParam(defaultValue = "20") int limit) {
+        return backfillJobService.recent(limit);
+    }
+
+    //PROGRESS AND THROUGHPUT OF ONE JOB
+    @GetMapping("/backfill/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> getBackfill(@PathVariable long id) {
+        Map<String, Object> job = backfillJobService.status(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @PostMapping("/backfill/jobs/{id}/resume")
+    public ResponseEntity<Map<String, Object>> resumeBackfill(@PathVariable long id) {
+        Map<String, Object> job = backfillJobService.resume(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @DeleteMapping("/backfill/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> cancelBackfill(@PathVariable long id) {
+        Map<String, Object> job = backfillJobService.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
     }
 
     @GetMapping("/fetch-save-new")
@@ -36,4 +108,50 @@ public class RedditController {
         return result;
     }
 
+    //NEXT SCHEDULED SCRAPE, THE INTERVAL IT PICKED AND THE ARRIVAL RATES BEHIND IT
+    @GetMapping("/schedule")
+    public Map<String, Object> getSchedule() {
+        RedditScraperService scraper = redditScraperService.getIfAvailable();
+        if (scraper == null) return Map.of("enabled", false);
+        return scraper.getSchedule();
+    }
+
+    //DROP ALL CACHED LLM EXTRACTIONS (e.g. after changing the prompt without bumping PROMPT_VERSION)
+    @DeleteMapping("/extraction-cache")
+    public Map<String, Object> invalidateExtractionCache() {
+        int deleted = extractionCache.invalidateAll();
+        return Map.of(
+            "deleted_count", deleted,
+            "message", "Extraction cache cleared"
+        );
+    }
+
+    //PRE-CLASSIFIER STATE: WHETHER A MODEL IS IN USE, POSTS IT SKIPPED AND HOW THE LAST RETRAINING WENT
+    @GetMapping("/preclassifier")
+    public Map<String, Object> getPreclassifier() {
+        return listingYieldClassifier.describe();
+    }
+
+    //RETRAIN THE PRE-CLASSIFIER NOW INSTEAD OF WAITING FOR THE NIGHTLY RUN
+    @PostMapping("/preclassifier/retrain")
+    public Map<String, Object> retrainPreclassifier() {
+        return listingYieldClassifier.retrain();
+    }
+
+    //SOLD/CLOSED/REMOVED COUNTS FROM THE LISTING STATUS REFRESHER AND ITS LAST RUN
+    @GetMapping("/status-refresh")
+    public Map<String, Object> getStatusRefresh() {
+        ListingStatusRefresher refresher = listingStatusRefresher.getIfAvailable();
+        if (refresher == null) return Map.of("enabled", false);
+        return refresher.describe();
+    }
+
+    //RE-CHECK THE LISTINGS THAT ARE DUE NOW INSTEAD OF WAITING FOR THE NEXT RUN
+    @PostMapping("/status-refresh/run")
+    public Map<String, Object> runStatusRefresh() {
+        ListingStatusRefresher refresher = listingStatusRefresher.getIfAvailable();
+        if (refresher == null) return Map.of("enabled", false);
+        return refresher.refresh();
+    }
+
 }
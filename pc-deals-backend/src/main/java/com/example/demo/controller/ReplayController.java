@@ -0,0 +1,31 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.ReplayIngestionService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/replay")
+@Profile("replay")
+public class ReplayController {
+    private final ReplayIngestionService replayIngestionService;
+
+    public ReplayController(ReplayIngestionService replayIngestionService) {
+        this.replayIngestionService = replayIngestionService;
+    }
+
+    // REPLAY THE RECORDED FIXTURES THROUGH INGESTION AND RETURN THE THROUGHPUT REPORT
+    // mode=new (scheduled scrapes over virtual time) or mode=backfill (fetch-save)
+    // warp=0 steps the virtual clock as fast as ingestion allows, warp=N runs it N times real time
+    @GetMapping("/run")
+    public Map<String, Object> run(@RequestParam(defaultValue = "new") String mode,
+                                   @RequestParam(defaultValue = "0") double warp,
+                                   @RequestParam(defaultValue = "true") boolean fresh) {
+        return replayIngestionService.run(mode, warp, fresh);
+    }
+}
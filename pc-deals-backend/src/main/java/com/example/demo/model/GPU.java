@@ -28,6 +28,10 @@ public class GPU {
     @Column(name = "deal_score")
     private Double dealScore;
 
+    // reddit_post_id of the listing this one reposts, null for originals
+    @Column(name = "repost_of")
+    private String repostOf;
+
     public GPU() {}
 
     public GPU(String model, Integer price, String redditUrl, LocalDateTime redditPostedAt, String redditPostId) {
@@ -94,4 +98,12 @@ public class GPU {
     public void setDealScore(Double dealScore) {
         this.dealScore = dealScore;
     }
-} 
\ No newline at end of file
+
+    public String getRepostOf() {
+        return repostOf;
+    }
+
+    public void setRepostOf(String repostOf) {
+        this.repostOf = repostOf;
+    }
+}
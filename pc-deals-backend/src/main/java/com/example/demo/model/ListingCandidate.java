@@ -0,0 +1,20 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A Reddit post that passed flair, length, duplicate and classifier checks and is waiting
+ * for price extraction.
+ */
+public record ListingCandidate(
+    String redditPostId,
+    String title,
+    String description,
+    String url,
+    LocalDateTime postedAt,
+    String author
+) {
+    public String text() {
+        return title + "\n\n" + description;
+    }
+}
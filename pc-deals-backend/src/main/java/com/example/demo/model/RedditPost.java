@@ -0,0 +1,30 @@
+package com.example.demo.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * The handful of fields the scraper reads from a /r/hardwareswap listing child.
+ */
+public record RedditPost(
+    String id,
+    String title,
+    String selftext,
+    String url,
+    long createdUtc,
+    String flair,
+    String author
+) {
+    public String fullname() {
+        return "t3_" + id;
+    }
+
+    public LocalDateTime postedAt() {
+        return Instant.ofEpochSecond(createdUtc).atZone(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    public ListingCandidate toCandidate() {
+        return new ListingCandidate(id, title, selftext, url, postedAt(), author);
+    }
+}
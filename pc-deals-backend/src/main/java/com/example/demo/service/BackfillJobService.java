@@ -0,0 +1,388 @@
+package com.example.demo.service;
+
+import com.example.demo.config.RequestBudget;
+import com.example.demo.model.RedditPost;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Historical crawls of /r/hardwareswap/new as jobs in backfill_jobs. A job is bounded by a time
+ * range, a number of saved listings, or both. Pages are fetched one after another with the
+ * {@code after} cursor on a single runner thread and handed to the {@link IngestionPipeline}, so
+ * extraction and writing of earlier pages overlap with fetching the next ones. The writer commits
+ * pages in order and, with each page, stores the job's cursor and counts, so a job picks up after
+ * its last written page when the application restarts. Jobs run one at a time in the order they
+ * were created.
+ */
+@Service
+public class BackfillJobService {
+    private static final Logger logger = Logger.getLogger(BackfillJobService.class.getName());
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    private record Job(long id, Status status, Long sinceUtc, Long untilUtc, Integer maxListings,
+                       String cursor, long cursorCreatedUtc, int listingsSaved) {}
+
+    // Pages fetched but not yet written. Bounds how far a listing-count job can overshoot its target
+    @Value("${reddit.backfill.max-pages-in-flight:3}")
+    private int maxPagesInFlight;
+
+    @Value("${reddit.backfill.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+
+    @Autowired
+    private RedditService redditService;
+
+    @Autowired
+    private IngestionPipeline ingestionPipeline;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private Clock clock;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "backfill-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Long> cancelRequested = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopping;
+
+    // Throughput of the job the runner is on, since it was (re)started in this process
+    private volatile Long activeJobId;
+    private volatile Instant activeSince;
+    private final AtomicInteger activePages = new AtomicInteger();
+    private final AtomicInteger activePosts = new AtomicInteger();
+    private final AtomicInteger activeListings = new AtomicInteger();
+
+    /** Creates a job and queues it behind any running one. Null bounds are open. */
+    public Map<String, Object> start(Instant since, Instant until, Integer maxListings) {
+        if (since == null && maxListings == null) {
+            throw new IllegalArgumentException("A backfill needs a start time (since) or a listing count (maxListings)");
+        }
+        if (since != null && until != null && !since.isBefore(until)) {
+            throw new IllegalArgumentException("since must be before until");
+        }
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO backfill_jobs (status, since_utc, until_utc, max_listings) VALUES (?, ?, ?, ?)",
+                new String[] { "id" });
+            statement.setString(1, Status.QUEUED.name());
+            statement.setObject(2, since == null ? null : since.getEpochSecond());
+            statement.setObject(3, until == null ? null : until.getEpochSecond());
+            statement.setObject(4, maxListings);
+            return statement;
+        }, keys);
+        long id = keys.getKey().longValue();
+        logger.info("Queued backfill job " + id + " (since " + since + ", until " + until + ", max " + maxListings + ")");
+        runner.submit(() -> run(id));
+        return status(id);
+    }
+
+    /** Re-queues a failed or cancelled job from its last written page. */
+    public Map<String, Object> resume(long id) {
+        int updated = jdbcTemplate.update(
+            "UPDATE backfill_jobs SET status = ?, last_error = NULL, finished_at = NULL, updated_at = NOW() " +
+            "WHERE id = ? AND status IN (?, ?)",
+            Status.QUEUED.name(), id, Status.FAILED.name(), Status.CANCELLED.name());
+        if (updated > 0) runner.submit(() -> run(id));
+        return status(id);
+    }
+
+    /** The job the runner is on stops after the page it is fetching; any other is cancelled right away. */
+    public Map<String, Object> cancel(long id) {
+        Long active = activeJobId;
+        if (active != null && active == id) {
+            cancelRequested.add(id);
+        } else {
+            jdbcTemplate.update(
+                "UPDATE backfill_jobs SET status = ?, finished_at = NOW(), updated_at = NOW() " +
+                "WHERE id = ? AND status IN (?, ?)",
+                Status.CANCELLED.name(), id, Status.QUEUED.name(), Status.RUNNING.name());
+        }
+        return status(id);
+    }
+
+    /** Blocks until the job is no longer queued or running, for callers that want the backfill done. */
+    public Map<String, Object> awaitFinished(long id, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            Map<String, Object> status = status(id);
+            Object state = status == null ? null : status.get("status");
+            boolean finished = !Status.QUEUED.name().equals(state) && !Status.RUNNING.name().equals(state);
+            if (finished || System.nanoTime() > deadline) return status;
+            Thread.sleep(100);
+        }
+    }
+
+    public List<Map<String, Object>> recent(int limit) {
+        return jdbcTemplate.queryForList("SELECT * FROM backfill_jobs ORDER BY id DESC LIMIT ?", limit).stream()
+            .map(this::describe)
+            .toList();
+    }
+
+    public Map<String, Object> status(long id) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT * FROM backfill_jobs WHERE id = ?", id);
+        return rows.isEmpty() ? null : describe(rows.get(0));
+    }
+
+    /** Jobs left queued or running by the previous process continue where their last written page ended. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        if (!resumeOnStartup) return;
+        List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT id FROM backfill_jobs WHERE status IN (?, ?) ORDER BY id",
+            Long.class, Status.RUNNING.name(), Status.QUEUED.name());
+        for (long id : ids) {
+            logger.info("Resuming backfill job " + id);
+            runner.submit(() -> run(id));
+        }
+    }
+
+    /**
+     * Stops fetching and waits for the pages already handed to the pipeline, leaving the job
+     * RUNNING so the next start resumes it.
+     */
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        runner.shutdown();
+        try {
+            if (!runner.awaitTermination(60, TimeUnit.SECONDS)) {
+                logger.warning("Backfill runner did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(long id) {
+        Job job = load(id);
+        if (job == null || (job.status() != Status.QUEUED && job.status() != Status.RUNNING)) return;
+        if (stopping) return;
+
+        jdbcTemplate.update(
+            "UPDATE backfill_jobs SET status = ?, started_at = COALESCE(started_at, NOW()), updated_at = NOW() WHERE id = ?",
+            Status.RUNNING.name(), id);
+        activeJobId = id;
+        activeSince = clock.instant();
+        activePages.set(0);
+        activePosts.set(0);
+        activeListings.set(0);
+
+        IngestionPipeline.Run run = ingestionPipeline.newRun();
+        Semaphore inFlight = new Semaphore(maxPagesInFlight);
+        AtomicInteger saved = new AtomicInteger(job.listingsSaved());
+        String after = job.cursor();
+        // After a restart from the newest page, everything newer than this is already done
+        long doneNewerThan = 0;
+        boolean freshStart = after == null;
+        Status outcome = Status.COMPLETED;
+        String error = null;
+
+        try {
+            if (redditService.getAccessToken() == null) throw new IllegalStateException("No Reddit access token");
+            while (true) {
+                if (stopping) {
+                    outcome = Status.RUNNING;
+                    break;
+                }
+                if (cancelRequested.remove(id)) {
+                    outcome = Status.CANCELLED;
+                    break;
+                }
+                if (run.failed()) throw new IllegalStateException("A page failed to extract or write");
+                if (!inFlight.tryAcquire(200, TimeUnit.MILLISECONDS)) continue;
+                // Checked once a permit is free, so the pages written meanwhile are counted
+                if (job.maxListings() != null && saved.get() >= job.maxListings()) {
+                    inFlight.release();
+                    break;
+                }
+
+                RedditPageReader.Page page;
+                try {
+                    page = redditService.fetchListingPage(after);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    if (!(e instanceof RequestBudget.UnavailableException) && !RequestBudget.isRetryable(e)) throw e;
+                    // Reddit is rate limiting or down and the budget has already waited and retried; go
+                    // round again (noticing a cancel or shutdown) instead of failing a job that may be hours in
+                    logger.warning("Backfill job " + id + " waiting for Reddit: " + e.getMessage());
+                    continue;
+                }
+                activePages.incrementAndGet();
+                activePosts.addAndGet(page.childCount());
+
+                // A cursor whose post was deleted makes Reddit answer empty pages; start again from the
+                // newest page and skip what the job already covered
+                if (page.childCount() == 0 && !freshStart) {
+                    inFlight.release();
+                    logger.info("Backfill job " + id + " cursor " + after + " is gone, walking back from newest");
+                    doneNewerThan = job.cursorCreatedUtc();
+                    after = null;
+                    freshStart = true;
+                    continue;
+                }
+                freshStart = true;
+                if (doneNewerThan > 0 && page.oldestCreatedUtc() >= doneNewerThan) {
+                    inFlight.release();
+                    after = page.after();
+                    if (after == null) break;
+                    continue;
+                }
+
+                long skipAbove = doneNewerThan;
+                List<RedditPost> posts = page.posts().stream()
+                    .filter(post -> skipAbove == 0 || post.createdUtc() < skipAbove)
+                    .filter(post -> job.untilUtc() == null || post.createdUtc() <= job.untilUtc())
+                    .filter(post -> job.sinceUtc() == null || post.createdUtc() >= job.sinceUtc())
+                    .toList();
+                boolean reachedSince = job.sinceUtc() != null && page.oldestCreatedUtc() < job.sinceUtc();
+                int remaining = job.maxListings() == null ? Integer.MAX_VALUE : job.maxListings() - saved.get();
+
+                String nextCursor = page.after();
+                long oldestCreatedUtc = page.oldestCreatedUtc();
+                int childCount = page.childCount();
+                ingestionPipeline.submit(run, posts, remaining, written -> {
+                    saved.addAndGet(written.size());
+                    activeListings.addAndGet(written.size());
+                    recordPage(id, nextCursor, oldestCreatedUtc, childCount, written.size());
+                    inFlight.release();
+                });
+
+                after = nextCursor;
+                if (reachedSince || after == null) break;
+            }
+            run.awaitSaved();
+            if (run.failed() && outcome == Status.COMPLETED) throw new IllegalStateException("A page failed to extract or write");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = Status.RUNNING;
+        } catch (Exception e) {
+            logger.warning("Backfill job " + id + " failed: " + e.getMessage());
+            outcome = Status.FAILED;
+            error = e.getMessage();
+        } finally {
+            activeJobId = null;
+        }
+
+        if (outcome == Status.RUNNING) {
+            logger.info("Backfill job " + id + " paused at " + after + ", resumes on next start");
+            return;
+        }
+        jdbcTemplate.update(
+            "UPDATE backfill_jobs SET status = ?, last_error = ?, finished_at = NOW(), updated_at = NOW() WHERE id = ?",
+            outcome.name(), error, id);
+        logger.info("Backfill job " + id + " " + outcome.name().toLowerCase() + ": " + saved.get() + " listings saved");
+    }
+
+    // Runs on the pipeline's writer, right after the page's listings were committed
+    private void recordPage(long id, String cursor, long oldestCreatedUtc, int postsRead, int listingsSaved) {
+        jdbcTemplate.update(
+            "UPDATE backfill_jobs SET cursor = COALESCE(?, cursor), " +
+            "cursor_created_utc = LEAST(COALESCE(cursor_created_utc, ?), ?), pages_done = pages_done + 1, " +
+            "posts_read = posts_read + ?, listings_saved = listings_saved + ?, updated_at = NOW() WHERE id = ?",
+            cursor, oldestCreatedUtc, oldestCreatedUtc, postsRead, listingsSaved, id);
+    }
+
+    private Job load(long id) {
+        List<Job> jobs = jdbcTemplate.query(
+            "SELECT id, status, since_utc, until_utc, max_listings, cursor, cursor_created_utc, listings_saved " +
+            "FROM backfill_jobs WHERE id = ?",
+            (rs, rowNum) -> new Job(
+                rs.getLong("id"),
+                Status.valueOf(rs.getString("status")),
+                rs.getObject("since_utc", Long.class),
+                rs.getObject("until_utc", Long.class),
+                rs.getObject("max_listings", Integer.class),
+                rs.getString("cursor"),
+                rs.getLong("cursor_created_utc"),
+                rs.getInt("listings_saved")),
+            id);
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    private Map<String, Object> describe(Map<String, Object> row) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        long id = ((Number) row.get("id")).longValue();
+        Long sinceUtc = row.get("since_utc") == null ? null : ((Number) row.get("since_utc")).longValue();
+        Long untilUtc = row.get("until_utc") == null ? null : ((Number) row.get("until_utc")).longValue();
+        Integer maxListings = row.get("max_listings") == null ? null : ((Number) row.get("max_listings")).intValue();
+        Long cursorCreatedUtc = row.get("cursor_created_utc") == null ? null : ((Number) row.get("cursor_created_utc")).longValue();
+        int listingsSaved = ((Number) row.get("listings_saved")).intValue();
+
+        status.put("id", id);
+        status.put("status", row.get("status"));
+        status.put("since", sinceUtc == null ? null : Instant.ofEpochSecond(sinceUtc));
+        status.put("until", untilUtc == null ? null : Instant.ofEpochSecond(untilUtc));
+        status.put("max_listings", maxListings);
+        status.put("reached", cursorCreatedUtc == null ? null : Instant.ofEpochSecond(cursorCreatedUtc));
+        status.put("pages_done", row.get("pages_done"));
+        status.put("posts_read", row.get("posts_read"));
+        status.put("listings_saved", listingsSaved);
+
+        // Share of the job done: listings against the target, or time covered of the range
+        Double progress = null;
+        if (maxListings != null) {
+            progress = Math.min(1.0, listingsSaved / (double) maxListings);
+        }
+        if (sinceUtc != null && cursorCreatedUtc != null) {
+            long rangeEnd = untilUtc != null ? untilUtc : clock.instant().getEpochSecond();
+            double covered = Math.max(0, Math.min(1.0, (rangeEnd - cursorCreatedUtc) / (double) Math.max(1, rangeEnd - sinceUtc)));
+            progress = progress == null ? covered : Math.max(progress, covered);
+        }
+        if ("COMPLETED".equals(row.get("status"))) progress = 1.0;
+        status.put("progress", progress == null ? null : Math.round(progress * 1000) / 1000.0);
+
+        Timestamp startedAt = (Timestamp) row.get("started_at");
+        Timestamp finishedAt = (Timestamp) row.get("finished_at");
+        status.put("created_at", row.get("created_at"));
+        status.put("started_at", startedAt);
+        status.put("finished_at", finishedAt);
+        if (startedAt != null && finishedAt != null) {
+            double seconds = Math.max(0.001, Duration.between(startedAt.toInstant(), finishedAt.toInstant()).toMillis() / 1000.0);
+            status.put("elapsed_seconds", seconds);
+            status.put("posts_per_second", ((Number) row.get("posts_read")).intValue() / seconds);
+            status.put("listings_per_second", listingsSaved / seconds);
+        }
+        Long active = activeJobId;
+        if (active != null && active == id) {
+            double seconds = Math.max(0.001, Duration.between(activeSince, clock.instant()).toMillis() / 1000.0);
+            Map<String, Object> current = new LinkedHashMap<>();
+            current.put("running_seconds", seconds);
+            current.put("pages_fetched", activePages.get());
+            current.put("posts_per_second", activePosts.get() / seconds);
+            current.put("listings_per_second", activeListings.get() / seconds);
+            status.put("current_run", current);
+        }
+        status.put("last_error", row.get("last_error"));
+        return status;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Two-tier cache of extraction results: an in-process LRU in front of the llm_extraction_cache
+ * table. Keys hash the normalized title + selftext together with the prompt version, so bumping
+ * {@link ListingExtractionService#PROMPT_VERSION} makes every older entry unreachable (and
+ * startup deletes them).
+ */
+@Component
+public class ExtractionCache {
+    private static final Logger logger = Logger.getLogger(ExtractionCache.class.getName());
+    private static final TypeReference<List<Map<String, Object>>> RESULT_TYPE = new TypeReference<>() {};
+
+    @Value("${openai.extraction.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Map<String, List<Map<String, Object>>> lru;
+    private Counter memoryHits;
+    private Counter databaseHits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        lru = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Map<String, Object>>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        memoryHits = Counter.builder("extraction.cache.hits").tag("tier", "memory").register(meterRegistry);
+        databaseHits = Counter.builder("extraction.cache.hits").tag("tier", "database").register(meterRegistry);
+        misses = Counter.builder("extraction.cache.misses").register(meterRegistry);
+
+        try {
+            int removed = jdbcTemplate.update(
+                "DELETE FROM llm_extraction_cache WHERE prompt_version <> ?", ListingExtractionService.PROMPT_VERSION);
+            if (removed > 0) logger.info("Dropped " + removed + " cached extractions from older prompt versions");
+        } catch (Exception e) {
+            logger.warning("Could not prune extraction cache: " + e.getMessage());
+        }
+    }
+
+    /** Returns the cached result for this post, or null on a miss. */
+    public List<Map<String, Object>> get(ListingCandidate candidate) {
+        String key = key(candidate);
+        synchronized (lru) {
+            List<Map<String, Object>> cached = lru.get(key);
+            if (cached != null) {
+                memoryHits.increment();
+                return cached;
+            }
+        }
+
+        try {
+            List<String> rows = jdbcTemplate.queryForList(
+                "SELECT result_json FROM llm_extraction_cache WHERE content_hash = ?", String.class, key);
+            if (!rows.isEmpty()) {
+                List<Map<String, Object>> cached = List.copyOf(objectMapper.readValue(rows.get(0), RESULT_TYPE));
+                synchronized (lru) {
+                    lru.put(key, cached);
+                }
+                databaseHits.increment();
+                return cached;
+            }
+        } catch (Exception e) {
+            logger.warning("Extraction cache lookup failed: " + e.getMessage());
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(ListingCandidate candidate, List<Map<String, Object>> results) {
+        String key = key(candidate);
+        List<Map<String, Object>> copy = List.copyOf(results);
+        synchronized (lru) {
+            lru.put(key, copy);
+        }
+        try {
+            jdbcTemplate.update(
+                "INSERT INTO llm_extraction_cache (content_hash, prompt_version, result_json) VALUES (?, ?, ?) " +
+                "ON CONFLICT (content_hash) DO NOTHING",
+                key, ListingExtractionService.PROMPT_VERSION, objectMapper.writeValueAsString(copy));
+        } catch (Exception e) {
+            logger.warning("Could not store extraction result: " + e.getMessage());
+        }
+    }
+
+    /** Drops every cached extraction, in memory and in the database. */
+    public int invalidateAll() {
+        synchronized (lru) {
+            lru.clear();
+        }
+        return jdbcTemplate.update("DELETE FROM llm_extraction_cache");
+    }
+
+    static String key(ListingCandidate candidate) {
+        String normalized = ListingExtractionService.PROMPT_VERSION + "\n"
+            + normalize(candidate.title()) + "\n" + normalize(candidate.description());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns candidate posts into model/price pairs. Each pair is a map with "model", "price" and
+ * "listing_id" (always "Listing 1" relative to its own post), the same shape the OpenAI prompt
+ * asks for, so {@link ListingValidator} treats every engine alike.
+ */
+public interface ExtractionEngine {
+
+    String name();
+
+    /**
+     * Results line up index-for-index with {@code candidates}. An empty list means the post has no
+     * listings; null means extraction failed (request error, rate limit, timeout) and the post has
+     * to be tried again later.
+     */
+    List<List<Map<String, Object>>> extractAll(List<ListingCandidate> candidates) throws InterruptedException;
+}
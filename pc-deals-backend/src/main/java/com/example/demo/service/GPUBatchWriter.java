@@ -0,0 +1,113 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GPU;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Inserts extracted listings with one multi-row statement per chunk. Rows that already exist for
+ * the same (reddit_post_id, model) are skipped by the database, so re-running a scrape or two
+ * overlapping scrapes never produce duplicates. Only the rows actually inserted come back, with
+ * their generated IDs, so only those go on to price alerts. Their daily price candles are updated
+ * in the same transaction, so gpu_price_candles never counts a listing that isn't stored. In-memory
+ * state (known posts, price stats, the market snapshot) only learns about them once the transaction
+ * commits, so a rollback leaves nothing behind.
+ */
+@Service
+public class GPUBatchWriter {
+    private static final Logger logger = Logger.getLogger(GPUBatchWriter.class.getName());
+
+    // 6 parameters per row keeps a chunk far below the 32767 bind-parameter limit of the driver
+    private static final int CHUNK_SIZE = 500;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private KnownPostIndex knownPostIndex;
+
+    @Autowired
+    private PriceStatsService priceStatsService;
+
+    @Autowired
+    private PriceCandleService priceCandleService;
+
+    @Autowired
+    private MarketSnapshotService marketSnapshotService;
+
+    @Transactional
+    public List<GPU> insertAll(List<GPU> listings) {
+        List<GPU> inserted = new ArrayList<>();
+        for (int from = 0; from < listings.size(); from += CHUNK_SIZE) {
+            inserted.addAll(insertChunk(listings.subList(from, Math.min(from + CHUNK_SIZE, listings.size()))));
+        }
+        if (inserted.isEmpty()) return inserted;
+        priceCandleService.record(inserted);
+
+        afterCommit(() -> {
+            knownPostIndex.markKnown(inserted.stream().map(GPU::getRedditPostId).toList());
+            priceStatsService.record(inserted);
+        });
+        marketSnapshotService.markChanged();
+        for (GPU gpu : inserted) {
+            logger.fine("Saved to DB: " + gpu.getModel() + " | $" + gpu.getPrice() + " | " + gpu.getRedditUrl());
+        }
+        if (inserted.size() < listings.size()) {
+            logger.info("Skipped " + (listings.size() - inserted.size()) + " listings that were already stored");
+        }
+        return inserted;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private List<GPU> insertChunk(List<GPU> chunk) {
+        if (chunk.isEmpty()) return List.of();
+        StringBuilder sql = new StringBuilder(
+            "INSERT INTO gpu_prices (model, price, reddit_url, reddit_posted_at, reddit_post_id, repost_of) VALUES ");
+        List<Object> params = new ArrayList<>(chunk.size() * 6);
+        for (int i = 0; i < chunk.size(); i++) {
+            GPU gpu = chunk.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+            params.add(gpu.getModel());
+            params.add(gpu.getPrice());
+            params.add(gpu.getRedditUrl());
+            params.add(gpu.getRedditPostedAt() == null ? null : Timestamp.valueOf(gpu.getRedditPostedAt()));
+            params.add(gpu.getRedditPostId());
+            params.add(gpu.getRepostOf());
+        }
+        sql.append(" ON CONFLICT (reddit_post_id, model) DO NOTHING")
+           .append(" RETURNING id, model, price, reddit_url, reddit_posted_at, reddit_post_id, repost_of");
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            GPU gpu = new GPU(
+                rs.getString("model"),
+                rs.getInt("price"),
+                rs.getString("reddit_url"),
+                rs.getTimestamp("reddit_posted_at") == null ? null : rs.getTimestamp("reddit_posted_at").toLocalDateTime(),
+                rs.getString("reddit_post_id"));
+            gpu.setId(rs.getLong("id"));
+            gpu.setRepostOf(rs.getString("repost_of"));
+            return gpu;
+        }, params.toArray());
+    }
+}
@@ -1,24 +1,61 @@
 package com.example.demo.service;
 
+import com.example.demo.util.RollingStats;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 //import java.time.LocalDateTime;
-import java.util.ArrayList;
-//import java.util.HashMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 //import java.util.Objects;
 //import java.util.stream.Collectors;
 
 @Service
 public class GPUService {
 
+    /**
+     * How far from its model's typical price a listing has to be to count as an outlier.
+     * MEAN: above average * threshold or below average / threshold. MAD: more than threshold
+     * robust z-scores from the median, where one robust z is 1.4826 median absolute deviations
+     * (one standard deviation for normal data). MAD is not pulled around by the outliers
+     * themselves. Models whose listings are all the same price have no MAD outliers.
+     */
+    public enum OutlierBand { MEAN, MAD }
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PriceStatsService priceStatsService;
+
+    @Value("${gpu.outliers.fetch-size:500}")
+    private int outlierFetchSize;
+
+    private JdbcTemplate streamingJdbcTemplate;
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void init() {
+        streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streamingJdbcTemplate.setFetchSize(outlierFetchSize);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
     public List<Map<String, Object>> getAllSavedListings() {
         String sql = "SELECT model, price, reddit_url AS url, reddit_posted_at AS timestamp FROM gpu_prices ORDER BY reddit_posted_at DESC";
         return jdbcTemplate.queryForList(sql);
@@ -30,72 +67,79 @@ public class GPUService {
     }
 
     public List<Map<String, Object>> getAllMarketPrices() {
+        return getAllMarketPrices("all");
+    }
+
+    public List<Map<String, Object>> getAllMarketPrices(String status) {
         String sql = "SELECT model, ROUND(AVG(price)) AS avg_price, COUNT(*) AS listings " +
-                     "FROM gpu_prices GROUP BY model ORDER BY avg_price DESC";
+                     "FROM gpu_prices WHERE repost_of IS NULL" + statusFilter(status) + " GROUP BY model ORDER BY avg_price DESC";
         return jdbcTemplate.queryForList(sql);
     }
     
     public Map<String, Object> getMarketPrice(String model) {
+        return getMarketPrice(model, "all");
+    }
+
+    public Map<String, Object> getMarketPrice(String model, String status) {
         String sql = "SELECT model, AVG(price) AS avg_price, COUNT(*) AS count " +
-                     "FROM gpu_prices WHERE model = ? GROUP BY model";
+                     "FROM gpu_prices WHERE model = ? AND repost_of IS NULL" + statusFilter(status) + " GROUP BY model";
         return jdbcTemplate.queryForMap(sql, model);
     }
 
+    /**
+     * Listing status filter kept up to date by ListingStatusRefresher: "sold" only counts posts seen
+     * CLOSED, "unsold" leaves out sold and removed posts (and keeps ones not checked yet), "all"
+     * counts every listing.
+     */
+    private static String statusFilter(String status) {
+        return switch (status == null ? "all" : status.toLowerCase()) {
+            case "all" -> "";
+            case "sold" -> " AND sold_at IS NOT NULL";
+            case "unsold" -> " AND sold_at IS NULL AND removed_at IS NULL";
+            default -> throw new IllegalArgumentException("status must be all, sold or unsold");
+        };
+    }
+
     public List<Map<String, Object>> getLatestListings() {
         String sql = "SELECT model, price, reddit_url AS url, reddit_posted_at AS timestamp FROM gpu_prices ORDER BY reddit_posted_at DESC";
         return jdbcTemplate.queryForList(sql);
     }
 
     public List<Map<String, Object>> getPriceHistory(String model) {
+        return getPriceHistory(model, "day");
+    }
+
+    /**
+     * Open/high/low/close, average and listing count per day, week or month, read from
+     * gpu_price_candles: one row per day the model was listed, however large gpu_prices grows.
+     * Weeks start on Monday.
+     */
+    public List<Map<String, Object>> getPriceHistory(String model, String interval) {
+        String period = switch (interval == null ? "day" : interval.toLowerCase()) {
+            case "day" -> "day";
+            case "week" -> "week";
+            case "month" -> "month";
+            default -> throw new IllegalArgumentException("interval must be day, week or month");
+        };
         String sql = """
-            WITH daily_prices AS (
-                SELECT
-                    reddit_posted_at::date AS date,
-                    MIN(price) AS low_price,
-                    MAX(price) AS high_price,
-                    AVG(price) AS avg_price,
-                    COUNT(*) AS listings,
-                    MIN(reddit_posted_at) AS first_timestamp,
-                    MAX(reddit_posted_at) AS last_timestamp
-                FROM gpu_prices
-                WHERE model = ?
-                GROUP BY reddit_posted_at::date
-            )
             SELECT
-                date,
-                ROUND(low_price) AS low_price,
-                ROUND(high_price) AS high_price,
-                ROUND(avg_price) AS avg_price,
-                listings,
-                (
-                    SELECT price 
-                    FROM gpu_prices 
-                    WHERE reddit_posted_at::date = daily_prices.date 
-                    AND reddit_posted_at = daily_prices.first_timestamp 
-                    LIMIT 1
-                ) AS open_price,
-                (
-                    SELECT price 
-                    FROM gpu_prices 
-                    WHERE reddit_posted_at::date = daily_prices.date 
-                    AND reddit_posted_at = daily_prices.last_timestamp 
-                    LIMIT 1
-                ) AS close_price
-            FROM daily_prices
-            ORDER BY date ASC
-            """;
+                DATE_TRUNC('%s', day)::date AS date,
+                MIN(low_price) AS low_price,
+                MAX(high_price) AS high_price,
+                ROUND(SUM(price_sum)::numeric / SUM(listings)) AS avg_price,
+                SUM(listings) AS listings,
+                (ARRAY_AGG(open_price ORDER BY open_at, open_id))[1] AS open_price,
+                (ARRAY_AGG(close_price ORDER BY close_at DESC, close_id DESC))[1] AS close_price
+            FROM gpu_price_candles
+            WHERE model = ?
+            GROUP BY 1
+            ORDER BY 1 ASC
+            """.formatted(period);
         return jdbcTemplate.queryForList(sql, model);
     }
     
     public Map<String, Object> analyzePrice(String model, int price) {
-        String sql = """
-            SELECT 
-                (SELECT ROUND(AVG(price)) FROM gpu_prices WHERE model = ? AND reddit_posted_at >= NOW() - INTERVAL '7 days') AS avg_price,
-                (SELECT STDDEV(price) FROM gpu_prices WHERE model = ? AND reddit_posted_at >= NOW() - INTERVAL '7 days') AS stddev_price,
-                (SELECT COUNT(*) FROM gpu_prices WHERE model = ? AND reddit_posted_at >= NOW() - INTERVAL '7 days') AS recent_listings
-        """;
-    
-        Map<String, Object> stats = jdbcTemplate.queryForMap(sql, model, model, model);
+        Map<String, Object> stats = recentPriceStats(model);
     
         if (stats.get("avg_price") == null || stats.get("stddev_price") == null) {
             return Map.of(
@@ -153,58 +197,78 @@ public class GPUService {
         );
     }    
 
-    public List<Map<String, Object>> getPriceOutliers(double threshold) {
-        List<String> models = jdbcTemplate.queryForList("SELECT DISTINCT model FROM gpu_prices", String.class);
-        List<Map<String, Object>> outliers = new ArrayList<>();
-
-        for (String model : models) {
-            Double avgPrice = jdbcTemplate.queryForObject(
-                "SELECT AVG(price) FROM gpu_prices WHERE model = ?", Double.class, model);
-
-            if (avgPrice == null || avgPrice == 0) continue;
-
-            double upper = avgPrice * threshold;
-            double lower = avgPrice / threshold;
-
-            List<Map<String, Object>> listings = jdbcTemplate.queryForList(
-                "SELECT model, price, reddit_post_id, reddit_url, reddit_posted_at FROM gpu_prices " +
-                "WHERE model = ? AND (price > ? OR price < ?) ORDER BY reddit_posted_at DESC",
-                model, upper, lower
-            );
-
-            for (Map<String, Object> listing : listings) {
-                Integer price = (Integer) listing.get("price");
-                double percentOfAverage = price / avgPrice;
-
-                listing.put("average_price", Math.round(avgPrice));
-                listing.put("percent_of_average", Math.round(percentOfAverage * 100.0) / 100.0);
-
-                outliers.add(listing);
-            }
+    /**
+     * avg_price (rounded), stddev_price and recent_listings over the last 7 days, from the in-memory
+     * stats when they are seeded (their window is whole hours, so it can start up to an hour later)
+     * and from SQL otherwise.
+     */
+    private Map<String, Object> recentPriceStats(String model) {
+        RollingStats.Summary summary = priceStatsService.summary(model);
+        if (summary == null) {
+            String sql = """
+                SELECT 
+                    (SELECT ROUND(AVG(price)) FROM gpu_prices WHERE model = ? AND repost_of IS NULL AND reddit_posted_at >= NOW() - INTERVAL '7 days') AS avg_price,
+                    (SELECT STDDEV(price) FROM gpu_prices WHERE model = ? AND repost_of IS NULL AND reddit_posted_at >= NOW() - INTERVAL '7 days') AS stddev_price,
+                    (SELECT COUNT(*) FROM gpu_prices WHERE model = ? AND repost_of IS NULL AND reddit_posted_at >= NOW() - INTERVAL '7 days') AS recent_listings
+            """;
+            return jdbcTemplate.queryForMap(sql, model, model, model);
         }
-
-        return outliers;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("avg_price", summary.count() == 0 ? null : Math.round(summary.mean()));
+        stats.put("stddev_price", summary.count() < 2 ? null : summary.stddev());
+        stats.put("recent_listings", summary.count());
+        return stats;
     }
 
-    public int deletePriceOutliers(double threshold) {
-        String sql = """
-            DELETE FROM gpu_prices
-            WHERE price > (
-                SELECT * FROM (
-                    SELECT AVG(price) * ?
-                    FROM gpu_prices AS sub
-                    WHERE sub.model = gpu_prices.model
-                ) AS high_threshold
-            )
-            OR price < (
-                SELECT * FROM (
-                    SELECT AVG(price) / ?
-                    FROM gpu_prices AS sub
-                    WHERE sub.model = gpu_prices.model
-                ) AS low_threshold
+    /**
+     * Runs outlier detection as a single query and hands each outlier to the consumer as it is read,
+     * ordered by model and newest first. Rows are fetched from a cursor outlierFetchSize at a time, so
+     * memory doesn't grow with the result.
+     */
+    public void forEachPriceOutlier(OutlierBand band, double threshold, Consumer<Map<String, Object>> consumer) {
+        String sql = band == OutlierBand.MEAN ? """
+            SELECT model, price, reddit_post_id, reddit_url, reddit_posted_at,
+                   ROUND(avg_price) AS average_price,
+                   ROUND(price / avg_price, 2) AS percent_of_average
+            FROM (
+                SELECT model, price, reddit_post_id, reddit_url, reddit_posted_at,
+                       AVG(price) OVER (PARTITION BY model) AS avg_price
+                FROM gpu_prices
+                WHERE price IS NOT NULL
+            ) listings
+            WHERE avg_price > 0 AND (price > avg_price * ? OR price < avg_price / ?)
+            ORDER BY model, reddit_posted_at DESC
+            """ : """
+            WITH medians AS (
+                SELECT model, PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY price) AS median_price
+                FROM gpu_prices
+                WHERE price IS NOT NULL
+                GROUP BY model
+            ),
+            deviations AS (
+                SELECT g.model, PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY ABS(g.price - m.median_price)) AS mad
+                FROM gpu_prices g
+                JOIN medians m ON m.model = g.model
+                WHERE g.price IS NOT NULL
+                GROUP BY g.model
             )
+            SELECT g.model, g.price, g.reddit_post_id, g.reddit_url, g.reddit_posted_at,
+                   ROUND(m.median_price::numeric) AS median_price,
+                   ROUND(d.mad::numeric, 1) AS median_absolute_deviation,
+                   ROUND(((g.price - m.median_price) / (1.4826 * d.mad))::numeric, 2) AS robust_z,
+                   ROUND((g.price / NULLIF(m.median_price, 0))::numeric, 2) AS percent_of_median
+            FROM gpu_prices g
+            JOIN medians m ON m.model = g.model
+            JOIN deviations d ON d.model = g.model
+            WHERE g.price IS NOT NULL AND d.mad > 0 AND ABS(g.price - m.median_price) > ? * 1.4826 * d.mad
+            ORDER BY g.model, g.reddit_posted_at DESC
             """;
-        return jdbcTemplate.update(sql, threshold, threshold);
+        Object[] args = band == OutlierBand.MEAN ? new Object[] {threshold, threshold} : new Object[] {threshold};
+
+        // Postgres only streams from a cursor inside a transaction; otherwise it sends the whole result at once
+        RowMapper<Map<String, Object>> rowMapper = new ColumnMapRowMapper();
+        readOnlyTransaction.executeWithoutResult(status -> streamingJdbcTemplate.query(sql,
+            (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())), args));
     }
 
     private double getAverageZBasedDealScore(String period, java.sql.Timestamp maxDate) {
@@ -248,140 +312,139 @@ public class GPUService {
         return avgScore != null ? avgScore : 0.0;
     }
 
-    public Map<String, Object> getMarketSnapshot() {
+    /**
+     * Hot GPUs, this week's average deal score against the month's, and the best deals of the week.
+     * Three aggregate queries over the last 7 days of listings; MarketSnapshotService runs this after
+     * ingestion commits and serves the result, so nothing else should call it per request.
+     */
+    public Map<String, Object> computeMarketSnapshot() {
         Map<String, Object> snapshot = new LinkedHashMap<>();
 
-        try {
-            // 1. Hot GPUs: most listed in last 7 days
-            String hotGpusSql = """
-                SELECT model, COUNT(*) AS listings
+        // 1. Hot GPUs: most listed in last 7 days
+        String hotGpusSql = """
+            SELECT model, COUNT(*) AS listings
+            FROM gpu_prices
+            WHERE reddit_posted_at >= NOW() - INTERVAL '7 days'
+            AND price IS NOT NULL
+            AND repost_of IS NULL
+            GROUP BY model
+            HAVING COUNT(*) > 0
+            ORDER BY listings DESC
+            LIMIT 5
+        """;
+        List<Map<String, Object>> hotGpus = jdbcTemplate.queryForList(hotGpusSql);
+        snapshot.put("hot_gpus", hotGpus);
+
+        // 2. Calculate average scores
+        String scoresSql = """
+            WITH model_stats AS (
+                SELECT 
+                    model,
+                    AVG(NULLIF(price, 0)) as avg_price,
+                    STDDEV(NULLIF(price, 0)) as stddev_price
                 FROM gpu_prices
                 WHERE reddit_posted_at >= NOW() - INTERVAL '7 days'
                 AND price IS NOT NULL
+                AND repost_of IS NULL
                 GROUP BY model
-                HAVING COUNT(*) > 0
-                ORDER BY listings DESC
-                LIMIT 5
-            """;
-            List<Map<String, Object>> hotGpus = jdbcTemplate.queryForList(hotGpusSql);
-            snapshot.put("hot_gpus", hotGpus);
-
-            // 2. Calculate average scores
-            String scoresSql = """
-                WITH model_stats AS (
-                    SELECT 
-                        model,
-                        AVG(NULLIF(price, 0)) as avg_price,
-                        STDDEV(NULLIF(price, 0)) as stddev_price
-                    FROM gpu_prices
-                    WHERE reddit_posted_at >= NOW() - INTERVAL '7 days'
-                    AND price IS NOT NULL
-                    GROUP BY model
-                    HAVING STDDEV(NULLIF(price, 0)) > 0
-                ),
-                recent_scores AS (
-                    SELECT 
-                        g.model,
-                        g.price,
-                        ms.avg_price,
-                        ms.stddev_price,
-                        CASE 
-                            WHEN g.reddit_posted_at >= NOW() - INTERVAL '7 days' THEN 'week'
-                            ELSE 'month'
-                        END as period
-                    FROM gpu_prices g
-                    JOIN model_stats ms ON g.model = ms.model
-                    WHERE g.reddit_posted_at >= NOW() - INTERVAL '7 days'
-                    AND g.price IS NOT NULL
-                    AND g.price > 0
-                )
-                SELECT 
-                    period,
-                    COALESCE(AVG(
-                        GREATEST(0, 
-                        LEAST(10, 
-                            ROUND(
-                                (0 - ((price - avg_price) / NULLIF(stddev_price, 0))) / 2.75 * 10
-                            )
-                        ))
-                    ), 0) as avg_score
-                FROM recent_scores
-                GROUP BY period
-            """;
-            
-            List<Map<String, Object>> scores = jdbcTemplate.queryForList(scoresSql);
-            double avgScoreWeek = 0.0;
-            double avgScoreMonth = 0.0;
-            
-            for (Map<String, Object> score : scores) {
-                String period = (String) score.get("period");
-                Object scoreObj = score.get("avg_score");
-                Double avgScore = scoreObj instanceof Number ? ((Number) scoreObj).doubleValue() : 0.0;
-                
-                if ("week".equals(period)) {
-                    avgScoreWeek = avgScore;
-                } else {
-                    avgScoreMonth = avgScore;
-                }
-            }
-
-            double roundedWeek = Math.round(avgScoreWeek * 10.0) / 10.0;
-            double roundedMonth = Math.round(avgScoreMonth * 10.0) / 10.0;
-
-            String scoreTrend = roundedWeek > roundedMonth
-                ? "Deals are better this week ✅"
-                : roundedWeek < roundedMonth
-                ? "Deals are worse this week ❌"
-                : "Deal quality is steady ⚖️";
-
-            snapshot.put("avg_score_week", roundedWeek);
-            snapshot.put("avg_score_month", roundedMonth);
-            snapshot.put("score_trend", scoreTrend);
-
-            // 3. Best Deals: highest deal scores in last 7 days
-            String bestDealsSql = """
-                WITH model_stats AS (
-                    SELECT 
-                        model,
-                        AVG(NULLIF(price, 0)) as avg_price,
-                        STDDEV(NULLIF(price, 0)) as stddev_price
-                    FROM gpu_prices
-                    WHERE reddit_posted_at >= NOW() - INTERVAL '7 days'
-                    AND price IS NOT NULL
-                    GROUP BY model
-                    HAVING STDDEV(NULLIF(price, 0)) > 0
-                )
+                HAVING STDDEV(NULLIF(price, 0)) > 0
+            ),
+            recent_scores AS (
                 SELECT 
                     g.model,
                     g.price,
-                    g.reddit_url as url,
-                    GREATEST(0, 
-                    LEAST(10, 
-                        ROUND(
-                            (0 - ((g.price - ms.avg_price) / NULLIF(ms.stddev_price, 0))) / 2.75 * 10
-                        )
-                    )) as deal_score
+                    ms.avg_price,
+                    ms.stddev_price,
+                    CASE 
+                        WHEN g.reddit_posted_at >= NOW() - INTERVAL '7 days' THEN 'week'
+                        ELSE 'month'
+                    END as period
                 FROM gpu_prices g
                 JOIN model_stats ms ON g.model = ms.model
                 WHERE g.reddit_posted_at >= NOW() - INTERVAL '7 days'
                 AND g.price IS NOT NULL
                 AND g.price > 0
-                ORDER BY deal_score DESC
-                LIMIT 5
-            """;
-            List<Map<String, Object>> bestDeals = jdbcTemplate.queryForList(bestDealsSql);
-            snapshot.put("best_deals", bestDeals);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Return a valid but empty snapshot on error
-            snapshot.put("hot_gpus", new ArrayList<>());
-            snapshot.put("avg_score_week", 0.0);
-            snapshot.put("avg_score_month", 0.0);
-            snapshot.put("score_trend", "Error calculating market trends");
-            snapshot.put("best_deals", new ArrayList<>());
+                AND g.repost_of IS NULL
+            )
+            SELECT 
+                period,
+                COALESCE(AVG(
+                    GREATEST(0, 
+                    LEAST(10, 
+                        ROUND(
+                            (0 - ((price - avg_price) / NULLIF(stddev_price, 0))) / 2.75 * 10
+                        )
+                    ))
+                ), 0) as avg_score
+            FROM recent_scores
+            GROUP BY period
+        """;
+        
+        List<Map<String, Object>> scores = jdbcTemplate.queryForList(scoresSql);
+        double avgScoreWeek = 0.0;
+        double avgScoreMonth = 0.0;
+        
+        for (Map<String, Object> score : scores) {
+            String period = (String) score.get("period");
+            Object scoreObj = score.get("avg_score");
+            Double avgScore = scoreObj instanceof Number ? ((Number) scoreObj).doubleValue() : 0.0;
+            
+            if ("week".equals(period)) {
+                avgScoreWeek = avgScore;
+            } else {
+                avgScoreMonth = avgScore;
+            }
         }
 
+        double roundedWeek = Math.round(avgScoreWeek * 10.0) / 10.0;
+        double roundedMonth = Math.round(avgScoreMonth * 10.0) / 10.0;
+
+        String scoreTrend = roundedWeek > roundedMonth
+            ? "Deals are better this week ✅"
+            : roundedWeek < roundedMonth
+            ? "Deals are worse this week ❌"
+            : "Deal quality is steady ⚖️";
+
+        snapshot.put("avg_score_week", roundedWeek);
+        snapshot.put("avg_score_month", roundedMonth);
+        snapshot.put("score_trend", scoreTrend);
+
+        // 3. Best Deals: highest deal scores in last 7 days
+        String bestDealsSql = """
+            WITH model_stats AS (
+                SELECT 
+                    model,
+                    AVG(NULLIF(price, 0)) as avg_price,
+                    STDDEV(NULLIF(price, 0)) as stddev_price
+                FROM gpu_prices
+                WHERE reddit_posted_at >= NOW() - INTERVAL '7 days'
+                AND price IS NOT NULL
+                AND repost_of IS NULL
+                GROUP BY model
+                HAVING STDDEV(NULLIF(price, 0)) > 0
+            )
+            SELECT 
+                g.model,
+                g.price,
+                g.reddit_url as url,
+                GREATEST(0, 
+                LEAST(10, 
+                    ROUND(
+                        (0 - ((g.price - ms.avg_price) / NULLIF(ms.stddev_price, 0))) / 2.75 * 10
+                    )
+                )) as deal_score
+            FROM gpu_prices g
+            JOIN model_stats ms ON g.model = ms.model
+            WHERE g.reddit_posted_at >= NOW() - INTERVAL '7 days'
+            AND g.price IS NOT NULL
+            AND g.price > 0
+            AND g.repost_of IS NULL
+            ORDER BY deal_score DESC
+            LIMIT 5
+        """;
+        List<Map<String, Object>> bestDeals = jdbcTemplate.queryForList(bestDealsSql);
+        snapshot.put("best_deals", bestDeals);
+
         return snapshot;
     }
 }
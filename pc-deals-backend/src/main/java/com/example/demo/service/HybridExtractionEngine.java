@@ -0,0 +1,108 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The engine ingestion uses: the rule-based parser answers every post it is confident about,
+ * and only the rest go to OpenAI. A threshold above 1 sends everything to the LLM, 0 nothing.
+ * Of the rest, posts {@link ListingYieldClassifier} expects nothing from are answered empty.
+ */
+@Service
+@Primary
+public class HybridExtractionEngine implements ExtractionEngine {
+
+    // Tuned on synthetic fixtures only (see ExtractionEngineComparison), not yet on real posts
+    @Value("${extraction.rules.confidence-threshold:0.8}")
+    private double confidenceThreshold;
+
+    @Autowired
+    private RuleBasedExtractionEngine ruleBasedExtractionEngine;
+
+    @Autowired
+    private ListingExtractionService listingExtractionService;
+
+    @Autowired
+    private ListingYieldClassifier listingYieldClassifier;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter answeredByRules;
+    private Counter answeredByLlm;
+    private Counter answeredByPreclassifier;
+
+    @PostConstruct
+    void registerMetrics() {
+        answeredByRules = postsCounter(ruleBasedExtractionEngine.name());
+        answeredByLlm = postsCounter(listingExtractionService.name());
+        answeredByPreclassifier = postsCounter("preclassifier");
+    }
+
+    @Override
+    public String name() {
+        return "hybrid";
+    }
+
+    @Override
+    public List<List<Map<String, Object>>> extractAll(List<ListingCandidate> candidates) throws InterruptedException {
+        List<List<Map<String, Object>>> results = new ArrayList<>(candidates.size());
+        List<ListingCandidate> unsure = new ArrayList<>();
+        List<Integer> unsureIndexes = new ArrayList<>();
+        Set<String> explored = new HashSet<>();
+        int skipped = 0;
+        for (ListingCandidate candidate : candidates) {
+            RuleBasedExtractionEngine.Extraction extraction = ruleBasedExtractionEngine.extract(candidate);
+            if (extraction.confidence() >= confidenceThreshold) {
+                results.add(extraction.listings());
+                continue;
+            }
+            ListingYieldClassifier.Decision decision = listingYieldClassifier.decide(candidate);
+            if (decision == ListingYieldClassifier.Decision.SKIP) {
+                results.add(List.of());
+                skipped++;
+                continue;
+            }
+            if (decision == ListingYieldClassifier.Decision.EXPLORE) explored.add(candidate.redditPostId());
+            unsureIndexes.add(results.size());
+            unsure.add(candidate);
+            results.add(null);
+        }
+        answeredByRules.increment(candidates.size() - unsure.size() - skipped);
+        answeredByPreclassifier.increment(skipped);
+        answeredByLlm.increment(unsure.size());
+
+        List<List<Map<String, Object>>> llmResults = listingExtractionService.extractAll(unsure);
+        List<ListingCandidate> extracted = new ArrayList<>(unsure.size());
+        List<List<Map<String, Object>>> extractedResults = new ArrayList<>(unsure.size());
+        for (int i = 0; i < unsure.size(); i++) {
+            results.set(unsureIndexes.get(i), llmResults.get(i));
+            if (llmResults.get(i) == null) continue;
+            extracted.add(unsure.get(i));
+            extractedResults.add(llmResults.get(i));
+        }
+        // Skipped posts stay out of the training data: their label would be the model's own guess.
+        // So do failed ones, until a retry gives them a real answer
+        listingYieldClassifier.remember(extracted, extractedResults, explored);
+        return results;
+    }
+
+    private Counter postsCounter(String engine) {
+        return Counter.builder("extraction.engine.posts")
+            .description("Candidate posts answered by each extraction engine")
+            .tag("engine", engine)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Remembers how far ingestion has got: the newest post seen per source (used as Reddit's
+ * {@code before} cursor) and every post ID that was already evaluated, whatever the outcome,
+ * so rejected posts are not re-filtered or re-extracted on the next run.
+ */
+@Service
+public class IngestionCheckpointService {
+    private static final Logger logger = Logger.getLogger(IngestionCheckpointService.class.getName());
+
+    public record Checkpoint(String newestFullname, long newestCreatedUtc) {}
+
+    /** Why a post left the ingestion path. */
+    public enum Outcome { SAVED, NO_LISTINGS, NO_GPU, SKIP_KEYWORD, TOO_LONG }
+
+    @Value("${reddit.processed-posts.retention-days:30}")
+    private int retentionDays;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public Checkpoint load(String source) {
+        List<Checkpoint> rows = jdbcTemplate.query(
+            "SELECT newest_fullname, newest_created_utc FROM ingestion_checkpoint WHERE source = ?",
+            (rs, rowNum) -> new Checkpoint(rs.getString(1), rs.getLong(2)), source);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /** Moves the checkpoint forward; an older post never moves it back. */
+    public void advance(String source, String fullname, long createdUtc) {
+        if (fullname == null) return;
+        jdbcTemplate.update("""
+            INSERT INTO ingestion_checkpoint (source, newest_fullname, newest_created_utc, updated_at)
+            VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (source) DO UPDATE
+            SET newest_fullname = EXCLUDED.newest_fullname,
+                newest_created_utc = EXCLUDED.newest_created_utc,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE ingestion_checkpoint.newest_created_utc <= EXCLUDED.newest_created_utc
+            """, source, fullname, createdUtc);
+    }
+
+    public Set<String> findProcessed(List<String> redditPostIds) {
+        if (redditPostIds.isEmpty()) return Set.of();
+        return new HashSet<>(jdbcTemplate.query(
+            connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    "SELECT reddit_post_id FROM ingestion_processed_posts WHERE reddit_post_id = ANY(?)");
+                Array ids = connection.createArrayOf("varchar", redditPostIds.toArray());
+                statement.setArray(1, ids);
+                return statement;
+            },
+            (rs, rowNum) -> rs.getString(1)));
+    }
+
+    /** Records the outcome for each post ID so the next run skips it without re-evaluating. */
+    public void markProcessed(Map<String, Outcome> outcomes) {
+        if (outcomes.isEmpty()) return;
+        List<Object[]> rows = outcomes.entrySet().stream()
+            .map(e -> new Object[] {e.getKey(), e.getValue().name()})
+            .toList();
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO ingestion_processed_posts (reddit_post_id, outcome) VALUES (?, ?) " +
+            "ON CONFLICT (reddit_post_id) DO UPDATE SET outcome = EXCLUDED.outcome, processed_at = CURRENT_TIMESTAMP",
+            rows);
+    }
+
+    @Scheduled(cron = "0 30 4 * * *")
+    public void pruneProcessedPosts() {
+        int removed = jdbcTemplate.update(
+            "DELETE FROM ingestion_processed_posts WHERE processed_at < NOW() - (INTERVAL '1 day' * ?)", retentionDays);
+        logger.info("Pruned " + removed + " processed post IDs older than " + retentionDays + " days");
+    }
+}
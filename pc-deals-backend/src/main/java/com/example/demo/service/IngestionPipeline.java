@@ -0,0 +1,519 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GPU;
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.model.RedditPost;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Ingestion as a chain of stages: the page fetcher (the caller, in {@link RedditService}) hands
+ * pages to classify, then fingerprint (repost lookup), then extract, then validate, then write,
+ * then alert. Each stage has its own worker threads and a bounded queue in front of it, so a slow
+ * OpenAI batch or SMTP send only holds up its own stage. When every queue ahead of it is full,
+ * {@link #submit} blocks the fetcher. Pages can finish extraction out of order, but the writer
+ * commits them in submission order. That way the checkpoint never moves past a page that hasn't
+ * been written. Posts whose extraction failed are written without an outcome, so they are not
+ * marked processed, and their page fails the run so the checkpoint stays before them.
+ */
+@Service
+public class IngestionPipeline {
+    private static final Logger logger = Logger.getLogger(IngestionPipeline.class.getName());
+
+    /**
+     * The pages one ingestion run submitted. Once a page of the run fails, later pages are still
+     * saved but no longer move the checkpoint, so the next run starts again from the gap.
+     */
+    public static final class Run {
+        private final List<PageWork> pages = new ArrayList<>();
+        private volatile boolean failed;
+
+        public boolean failed() {
+            return failed;
+        }
+
+        /** Waits for every submitted page and returns the listings that were inserted. */
+        public List<GPU> awaitSaved() throws InterruptedException {
+            List<GPU> saved = new ArrayList<>();
+            for (PageWork page : pages) {
+                try {
+                    saved.addAll(page.saved.get());
+                } catch (ExecutionException e) {
+                    failed = true;
+                }
+            }
+            return saved;
+        }
+    }
+
+    private static final class PageWork {
+        final long sequence;
+        final Run run;
+        final List<RedditPost> posts;
+        final int maxListings;
+        final String checkpointFullname;
+        final long checkpointCreatedUtc;
+        final Consumer<List<GPU>> onWritten;
+        final CompletableFuture<List<GPU>> saved = new CompletableFuture<>();
+
+        final Map<String, IngestionCheckpointService.Outcome> outcomes = new LinkedHashMap<>();
+        List<ListingCandidate> candidates = List.of();
+        // Parallel to candidates; a null fingerprint or match means none
+        List<RepostDetector.Fingerprint> fingerprints = List.of();
+        List<RepostDetector.Match> reposts = List.of();
+        List<List<Map<String, Object>>> results = List.of();
+        List<GPU> listings = List.of();
+        // Candidates whose extraction failed; they get no outcome and are evaluated again next run
+        int extractionFailures;
+        Exception error;
+
+        PageWork(long sequence, Run run, List<RedditPost> posts, int maxListings,
+                 String checkpointFullname, long checkpointCreatedUtc, Consumer<List<GPU>> onWritten) {
+            this.sequence = sequence;
+            this.run = run;
+            this.posts = posts;
+            this.maxListings = maxListings;
+            this.checkpointFullname = checkpointFullname;
+            this.checkpointCreatedUtc = checkpointCreatedUtc;
+            this.onWritten = onWritten;
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageBody {
+        void apply(PageWork work) throws Exception;
+    }
+
+    // Pages waiting in front of each stage; a page is up to 100 posts
+    @Value("${ingestion.pipeline.queue-capacity:4}")
+    private int queueCapacity;
+
+    // Pages extracted at once. Each page already fans its batches out over the extraction executor
+    @Value("${ingestion.pipeline.extractor-threads:2}")
+    private int extractorThreads;
+
+    @Value("${ingestion.pipeline.alert-threads:1}")
+    private int alertThreads;
+
+    @Value("${ingestion.pipeline.drain-timeout-seconds:60}")
+    private long drainTimeoutSeconds;
+
+    @Autowired
+    private ListingClassifier listingClassifier;
+
+    @Autowired
+    private RepostDetector repostDetector;
+
+    @Autowired
+    private ExtractionEngine extractionEngine;
+
+    @Autowired
+    private ListingValidator listingValidator;
+
+    @Autowired
+    private GPUBatchWriter gpuBatchWriter;
+
+    @Autowired
+    private IngestionCheckpointService ingestionCheckpointService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private BlockingQueue<PageWork> classifyQueue;
+    private BlockingQueue<PageWork> fingerprintQueue;
+    private BlockingQueue<PageWork> extractQueue;
+    private BlockingQueue<PageWork> validateQueue;
+    private BlockingQueue<PageWork> writeQueue;
+    private BlockingQueue<List<GPU>> alertQueue;
+
+    private final ReentrantLock submitLock = new ReentrantLock();
+    // Guarded by submitLock
+    private long nextSequence;
+    // Pages submitted but not yet written, plus alert batches not yet sent
+    private final AtomicInteger pagesInFlight = new AtomicInteger();
+    private final AtomicInteger alertsInFlight = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean accepting = true;
+    private volatile boolean stopped;
+
+    private Counter postsEvaluated;
+    private Counter listingsSaved;
+    private Counter repostsReused;
+    private Counter repostsExtracted;
+
+    @PostConstruct
+    void start() {
+        classifyQueue = queue("classify");
+        fingerprintQueue = queue("fingerprint");
+        extractQueue = queue("extract");
+        validateQueue = queue("validate");
+        writeQueue = queue("persist");
+        alertQueue = new ArrayBlockingQueue<>(queueCapacity * 4);
+        Gauge.builder("ingestion.pipeline.queue.depth", alertQueue, BlockingQueue::size)
+            .description("Work items waiting in front of an ingestion stage")
+            .tag("stage", "alert")
+            .register(meterRegistry);
+
+        postsEvaluated = Counter.builder("ingestion.posts.evaluated")
+            .description("Posts filtered (and possibly extracted) for the first time")
+            .register(meterRegistry);
+        listingsSaved = Counter.builder("ingestion.listings.saved")
+            .description("GPU listings inserted into gpu_prices")
+            .register(meterRegistry);
+        repostsReused = Counter.builder("ingestion.reposts")
+            .description("Posts recognized as reposts of an earlier listing")
+            .tag("action", "reused")
+            .register(meterRegistry);
+        repostsExtracted = Counter.builder("ingestion.reposts")
+            .description("Posts recognized as reposts of an earlier listing")
+            .tag("action", "extracted")
+            .register(meterRegistry);
+
+        startStage("filter", 1, classifyQueue, this::classify, fingerprintQueue);
+        startStage("fingerprint", 1, fingerprintQueue, this::fingerprint, extractQueue);
+        startStage("extract", extractorThreads, extractQueue, this::extract, validateQueue);
+        startStage("validate", 1, validateQueue, this::validate, writeQueue);
+        startWorker("ingest-persist", this::runWriter);
+        for (int i = 1; i <= alertThreads; i++) startWorker("ingest-alert-" + i, this::runAlerts);
+    }
+
+    public Run newRun() {
+        return new Run();
+    }
+
+    /**
+     * Queues one page for processing, blocking while the classifier queue is full. Posts are
+     * newest first as Reddit returned them. The checkpoint moves to the given post once this page
+     * and every page submitted before it has been written; pass null to leave it alone.
+     */
+    public void submit(Run run, List<RedditPost> posts, int maxListings, String checkpointFullname,
+                       long checkpointCreatedUtc) throws InterruptedException {
+        submit(run, posts, maxListings, checkpointFullname, checkpointCreatedUtc, null);
+    }
+
+    /**
+     * Same, with a callback the writer runs once this page's listings are committed, in page order
+     * and only while the run hasn't failed, e.g. to persist a job's cursor.
+     */
+    public void submit(Run run, List<RedditPost> posts, int maxListings, Consumer<List<GPU>> onWritten)
+            throws InterruptedException {
+        submit(run, posts, maxListings, null, 0, onWritten);
+    }
+
+    private void submit(Run run, List<RedditPost> posts, int maxListings, String checkpointFullname,
+                        long checkpointCreatedUtc, Consumer<List<GPU>> onWritten) throws InterruptedException {
+        if (!accepting) throw new IllegalStateException("Ingestion pipeline is shutting down");
+        // The writer waits for every sequence number in turn, so one is only used up once its page
+        // is actually queued. Holding the lock across the put keeps pages queued in sequence order.
+        submitLock.lockInterruptibly();
+        try {
+            PageWork work = new PageWork(nextSequence, run, posts, maxListings,
+                checkpointFullname, checkpointCreatedUtc, onWritten);
+            pagesInFlight.incrementAndGet();
+            try {
+                classifyQueue.put(work);
+            } catch (InterruptedException e) {
+                pagesInFlight.decrementAndGet();
+                throw e;
+            }
+            nextSequence++;
+            run.pages.add(work);
+        } finally {
+            submitLock.unlock();
+        }
+    }
+
+    /** Submits one page and waits for it, for callers that need each page's result before the next. */
+    public List<GPU> process(List<RedditPost> posts, int maxListings) throws InterruptedException {
+        Run run = newRun();
+        submit(run, posts, maxListings, null, 0);
+        return run.awaitSaved();
+    }
+
+    /** Stops taking pages and lets everything already queued reach the database and the alert senders. */
+    @PreDestroy
+    public void drain() {
+        accepting = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+        while ((pagesInFlight.get() > 0 || alertsInFlight.get() > 0) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (pagesInFlight.get() > 0 || alertsInFlight.get() > 0) {
+            logger.warning("Ingestion pipeline stopped with " + pagesInFlight.get() + " pages and "
+                + alertsInFlight.get() + " alert batches unfinished");
+        }
+        stopped = true;
+        workers.forEach(Thread::interrupt);
+    }
+
+    // Stage bodies
+
+    private void classify(PageWork work) {
+        Set<String> processed = ingestionCheckpointService.findProcessed(work.posts.stream().map(RedditPost::id).toList());
+        List<ListingCandidate> candidates = new ArrayList<>();
+
+        for (RedditPost post : work.posts) {
+            if (processed.contains(post.id())) continue;
+            if ((post.title() + " " + post.selftext()).length() > 1400) {  //skipping long listings (too much noise)
+                work.outcomes.put(post.id(), IngestionCheckpointService.Outcome.TOO_LONG);
+                continue;
+            }
+
+            ListingClassifier.Classification classification = listingClassifier.classify(post.title(), post.selftext());
+            if (!classification.containsGPU()) {
+                work.outcomes.put(post.id(), IngestionCheckpointService.Outcome.NO_GPU);
+                continue;
+            }
+            if (classification.isSkipped()) {
+                logger.fine(() -> "Skipped (keyword \"" + classification.skipKeyword() + "\"): " + post.title());
+                work.outcomes.put(post.id(), IngestionCheckpointService.Outcome.SKIP_KEYWORD);
+                continue;
+            }
+
+            candidates.add(post.toCandidate());
+        }
+        work.candidates = candidates;
+        postsEvaluated.increment(work.outcomes.size() + candidates.size());
+    }
+
+    /** Reposts with unchanged prices get the earlier extraction and skip the extract stage. */
+    private void fingerprint(PageWork work) {
+        List<RepostDetector.Fingerprint> fingerprints = new ArrayList<>(work.candidates.size());
+        List<RepostDetector.Match> reposts = new ArrayList<>(work.candidates.size());
+        List<List<Map<String, Object>>> results = new ArrayList<>(work.candidates.size());
+        for (ListingCandidate candidate : work.candidates) {
+            RepostDetector.Fingerprint fingerprint = repostDetector.fingerprint(candidate);
+            RepostDetector.Match repost = fingerprint == null ? null : repostDetector.findMatch(fingerprint);
+            fingerprints.add(fingerprint);
+            reposts.add(repost);
+            results.add(repost == null ? null : repost.reusableResult());
+            if (repost != null) {
+                logger.fine(() -> "Repost of " + repost.originalPostId() + " (" + repost.distance() + " bits): "
+                    + candidate.title());
+                (repost.reusableResult() != null ? repostsReused : repostsExtracted).increment();
+            }
+        }
+        work.fingerprints = fingerprints;
+        work.reposts = reposts;
+        work.results = results;
+    }
+
+    private void extract(PageWork work) throws InterruptedException {
+        List<ListingCandidate> pending = new ArrayList<>();
+        for (int i = 0; i < work.candidates.size(); i++) {
+            if (work.results.get(i) == null) pending.add(work.candidates.get(i));
+        }
+        if (pending.isEmpty()) return;
+        List<List<Map<String, Object>>> extracted = extractionEngine.extractAll(pending);
+        for (int i = 0, next = 0; i < work.candidates.size(); i++) {
+            if (work.results.get(i) == null) work.results.set(i, extracted.get(next++));
+        }
+    }
+
+    private void validate(PageWork work) {
+        List<GPU> listings = new ArrayList<>();
+        for (int i = 0; i < work.candidates.size() && listings.size() < work.maxListings; i++) {
+            if (work.results.get(i) == null) {
+                work.extractionFailures++;
+                continue;
+            }
+            List<GPU> valid = listingValidator.validate(work.candidates.get(i), work.results.get(i));
+            int remaining = work.maxListings - listings.size();
+            if (valid.size() > remaining) valid = valid.subList(0, remaining);
+            RepostDetector.Match repost = work.reposts.get(i);
+            if (repost != null) valid.forEach(gpu -> gpu.setRepostOf(repost.originalPostId()));
+            work.outcomes.put(work.candidates.get(i).redditPostId(), valid.isEmpty()
+                ? IngestionCheckpointService.Outcome.NO_LISTINGS
+                : IngestionCheckpointService.Outcome.SAVED);
+            listings.addAll(valid);
+        }
+        work.listings = listings;
+    }
+
+    // Single writer: buffers pages that finished early and commits them in sequence order
+    private void runWriter() {
+        Timer timer = stageTimer("persist");
+        TreeMap<Long, PageWork> ready = new TreeMap<>();
+        long expected = 0;
+        while (!stopped) {
+            PageWork work;
+            try {
+                work = writeQueue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (work == null) continue;
+            ready.put(work.sequence, work);
+            while (!ready.isEmpty() && ready.firstKey() == expected) {
+                PageWork next = ready.pollFirstEntry().getValue();
+                long start = System.nanoTime();
+                write(next);
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                expected++;
+            }
+        }
+    }
+
+    private void write(PageWork work) {
+        try {
+            if (work.error != null) throw work.error;
+            List<GPU> saved = gpuBatchWriter.insertAll(work.listings);
+            ingestionCheckpointService.markProcessed(work.outcomes);
+            List<String> originals = new ArrayList<>(work.candidates.size());
+            for (int i = 0; i < work.candidates.size(); i++) {
+                RepostDetector.Match repost = work.reposts.get(i);
+                originals.add(repost == null ? work.candidates.get(i).redditPostId() : repost.originalPostId());
+            }
+            repostDetector.record(work.fingerprints, originals, work.results);
+            if (work.extractionFailures > 0) {
+                logger.warning("Ingestion page " + work.sequence + ": extraction failed for " + work.extractionFailures
+                    + " posts, leaving them unprocessed and the checkpoint where it is");
+                work.run.failed = true;
+            }
+            if (work.checkpointFullname != null && !work.run.failed) {
+                ingestionCheckpointService.advance(RedditService.CHECKPOINT_SOURCE, work.checkpointFullname,
+                    work.checkpointCreatedUtc);
+            }
+            if (work.onWritten != null && !work.run.failed) work.onWritten.accept(saved);
+            listingsSaved.increment(saved.size());
+            if (!saved.isEmpty()) {
+                alertsInFlight.incrementAndGet();
+                alertQueue.put(saved);
+            }
+            work.saved.complete(saved);
+        } catch (Exception e) {
+            logger.warning("Ingestion page " + work.sequence + " failed: " + e.getMessage());
+            work.run.failed = true;
+            work.saved.completeExceptionally(e);
+        } finally {
+            pagesInFlight.decrementAndGet();
+        }
+    }
+
+    private void runAlerts() {
+        Timer timer = stageTimer("alert");
+        while (!stopped) {
+            List<GPU> saved;
+            try {
+                saved = alertQueue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (saved == null) continue;
+            long start = System.nanoTime();
+            try {
+                notificationService.checkForPriceAlerts(saved);
+            } catch (Exception e) {
+                logger.warning("Price alert fan-out failed: " + e.getMessage());
+            } finally {
+                alertsInFlight.decrementAndGet();
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    // Plumbing
+
+    private BlockingQueue<PageWork> queue(String stage) {
+        BlockingQueue<PageWork> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("ingestion.pipeline.queue.depth", queue, BlockingQueue::size)
+            .description("Work items waiting in front of an ingestion stage")
+            .tag("stage", stage)
+            .register(meterRegistry);
+        return queue;
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("ingestion.stage.duration")
+            .description("Time spent per ingestion stage, per page")
+            .tag("stage", stage)
+            .register(meterRegistry);
+    }
+
+    /** A failed page keeps moving so the writer, which commits in order, is never left waiting for it. */
+    private void startStage(String stage, int threads, BlockingQueue<PageWork> in, StageBody body,
+                            BlockingQueue<PageWork> out) {
+        Timer timer = stageTimer(stage);
+        for (int i = 1; i <= threads; i++) {
+            startWorker("ingest-" + stage + "-" + i, () -> {
+                while (!stopped) {
+                    PageWork work;
+                    try {
+                        work = in.poll(200, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (work == null) continue;
+                    long start = System.nanoTime();
+                    if (work.error == null) {
+                        try {
+                            body.apply(work);
+                        } catch (Exception e) {
+                            work.error = e;
+                        }
+                    }
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    handOff(work, out);
+                }
+            });
+        }
+    }
+
+    /**
+     * Passes a page on, even when interrupted, since dropping it would leave a gap in the sequence
+     * the writer commits in. Only once the pipeline has stopped, and the writer with it, is the
+     * page given up.
+     */
+    private void handOff(PageWork work, BlockingQueue<PageWork> out) {
+        while (true) {
+            try {
+                out.put(work);
+                return;
+            } catch (InterruptedException e) {
+                if (stopped) {
+                    pagesInFlight.decrementAndGet();
+                    work.saved.completeExceptionally(e);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void startWorker(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        workers.add(thread);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers "which of these Reddit posts are already in gpu_prices?" for a whole page at once.
+ * Recently saved or looked-up IDs are kept in a bounded in-memory set; only the rest go to the
+ * database, in a single {@code reddit_post_id = ANY(?)} query.
+ */
+@Component
+public class KnownPostIndex {
+
+    @Value("${reddit.known-posts.max-entries:5000}")
+    private int maxEntries;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Set<String> recent;
+
+    @PostConstruct
+    void init() {
+        recent = Collections.newSetFromMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Returns the index of the first post (in page order) that is already stored, or -1.
+     * Only the posts before the first in-memory hit need a database lookup.
+     */
+    public int firstKnown(List<String> redditPostIds) {
+        int firstCached = -1;
+        synchronized (recent) {
+            for (int i = 0; i < redditPostIds.size(); i++) {
+                if (recent.contains(redditPostIds.get(i))) {
+                    firstCached = i;
+                    break;
+                }
+            }
+        }
+
+        List<String> unresolved = firstCached < 0 ? redditPostIds : redditPostIds.subList(0, firstCached);
+        Set<String> stored = findStored(unresolved);
+        for (int i = 0; i < unresolved.size(); i++) {
+            if (stored.contains(unresolved.get(i))) return i;
+        }
+        return firstCached;
+    }
+
+    public void markKnown(Collection<String> redditPostIds) {
+        synchronized (recent) {
+            recent.addAll(redditPostIds);
+        }
+    }
+
+    private Set<String> findStored(List<String> redditPostIds) {
+        if (redditPostIds.isEmpty()) return Set.of();
+        List<String> stored = jdbcTemplate.query(
+            connection -> {
+                var statement = connection.prepareStatement(
+                    "SELECT DISTINCT reddit_post_id FROM gpu_prices WHERE reddit_post_id = ANY(?)");
+                Array ids = connection.createArrayOf("varchar", redditPostIds.toArray());
+                statement.setArray(1, ids);
+                return statement;
+            },
+            (rs, rowNum) -> rs.getString(1));
+        markKnown(stored);
+        return new HashSet<>(stored);
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.demo.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Classifies a Reddit post in one pass over "title + description" with an Aho-Corasick automaton
+ * holding every GPU model spelling and every skip keyword. Model hits only count inside the title;
+ * skip keywords count anywhere. Built once at startup and safe to share between threads.
+ */
+@Component
+public class ListingClassifier {
+
+    public static final List<String> GPU_MODELS = List.of(
+        "1050", "1050 Ti", "1050Ti", "1060", "1070", "1070 Ti", "1070Ti", "1080", "1080 Ti", "1080Ti",
+        "1650", "1660", "1660 Super", "1660Super", "1660 Ti", "1660Ti",
+        "2060", "2060 Super", "2060Super", "2070", "2070 Super", "2070Super", "2080", "2080 Super", "2080Super", "2080 Ti", "2080Ti",
+        "3050", "3060", "3060 Ti", "3060Ti", "3070", "3070 Ti", "3070Ti", "3080", "3080 Ti", "3080Ti", "3090", "3090 Ti", "3090Ti",
+        "4060", "4060 Ti", "4060Ti", "4070", "4070 Super", "4070Super", "4070 Ti", "4070Ti", "4070 Ti Super", "4070TiSuper", "4070Ti Super",
+        "4080", "4080 Super", "4080Super", "4090",
+        "5070", "5070 Ti", "5070Ti", "5080", "5090",
+        "6600", "6600 XT", "6600XT", "6650 XT", "6650XT", "6700 XT", "6700XT", "6750 XT", "6750XT",
+        "6800", "6800 XT", "6800XT", "6900 XT", "6900XT", "6950 XT", "6950XT",
+        "7600", "7700 XT", "7700XT", "7800 XT", "7800XT", "7900 GRE","7900GRE", "7900 XT", "7900XT", "7900 XTX", "7900XTX",
+        "9070", "9070 XT", "9070XT"
+    );
+
+    public static final List<String> SKIP_KEYWORDS = List.of(
+        "full build", "full pc",
+        "custom build", "gaming pc", "full custom build", "complete pc", "complete gaming pc", "gaming rig", "custom Rig", "Gaming rig", "Gaming Rig",
+        "desktop pc", "complete build", "entire pc", "ssf build", "itx build", "built pc", "ssf pc", "itx pc", "atx pc", "custom desktop",
+        "custom pc", "gaming laptop", "gaming desktop", "whole setup", "gaming setup", "budget pc", "minisforum",
+        "gaming PC", "Gaming PC", "flow x13", "complete rig", "complete gaming",
+        "razer blade", "not looking to separate", "not going to separate", "will not separate",
+        "won't separate", "wont separate", "as a bundle", "as a combo"
+        );
+
+    /** A model hit in the title: canonical name (e.g. "3080 Ti") plus its character offsets. */
+    public record ModelMatch(String model, int start, int end) {}
+
+    /** Everything the ingestion loop needs to decide whether a post goes to extraction. */
+    public record Classification(List<ModelMatch> models, String skipKeyword) {
+        public boolean containsGPU() {
+            return !models.isEmpty();
+        }
+
+        public boolean isSkipped() {
+            return skipKeyword != null;
+        }
+    }
+
+    private final Map<String, String> canonicalModels = new LinkedHashMap<>();
+    private final AhoCorasick automaton;
+    // Pattern ids below this are models, the rest are skip keywords
+    private final int keywordOffset;
+    private final String[] patterns;
+    private final String[] canonical;
+
+    public ListingClassifier() {
+        // First spelling wins, and the list always puts the spaced form ("3080 Ti") first
+        for (String model : GPU_MODELS) {
+            canonicalModels.putIfAbsent(normalize(model), model);
+        }
+        Map<String, String> keywords = new LinkedHashMap<>();
+        for (String keyword : SKIP_KEYWORDS) {
+            keywords.putIfAbsent(keyword.toLowerCase(Locale.ROOT), keyword);
+        }
+
+        List<String> all = new ArrayList<>(GPU_MODELS);
+        this.keywordOffset = all.size();
+        all.addAll(keywords.values());
+        this.patterns = all.toArray(new String[0]);
+        this.canonical = new String[keywordOffset];
+        for (int i = 0; i < keywordOffset; i++) {
+            canonical[i] = canonicalModels.get(normalize(patterns[i]));
+        }
+        this.automaton = new AhoCorasick(patterns);
+    }
+
+    public Classification classify(String title, String description) {
+        String text = title + " " + description;
+        List<ModelMatch> models = new ArrayList<>();
+        String[] skipKeyword = new String[1];
+        int titleLength = title.length();
+
+        // Candidate model hits, indexed by start offset, keeping the longest one per start
+        int[] longestAt = new int[titleLength];
+        Arrays.fill(longestAt, -1);
+
+        automaton.scan(text, (patternId, start, end) -> {
+            if (patternId >= keywordOffset) {
+                if (skipKeyword[0] == null) skipKeyword[0] = patterns[patternId];
+                // Keep going while still inside the title, model hits may follow
+                return end <= titleLength;
+            }
+            if (end > titleLength || !isDigitBoundary(text, start, end)) return true;
+            int current = longestAt[start];
+            if (current < 0 || patterns[current].length() < end - start) longestAt[start] = patternId;
+            return true;
+        }, titleLength, () -> collectModels(longestAt, models) && skipKeyword[0] == null);
+
+        return new Classification(models, models.isEmpty() ? null : skipKeyword[0]);
+    }
+
+    public List<ModelMatch> findModels(String title) {
+        return classify(title, "").models();
+    }
+
+    public String findSkipKeyword(String title, String description) {
+        String[] skipKeyword = new String[1];
+        automaton.scan(title + " " + description, (patternId, start, end) -> {
+            if (patternId < keywordOffset) return true;
+            skipKeyword[0] = patterns[patternId];
+            return false;
+        }, -1, () -> true);
+        return skipKeyword[0];
+    }
+
+    public boolean isKnownModel(String model) {
+        return model != null && canonicalModels.containsKey(normalize(model));
+    }
+
+    public String canonicalModel(String model) {
+        return model == null ? null : canonicalModels.get(normalize(model));
+    }
+
+    /** Leftmost-longest, non-overlapping selection — the same answer the old per-model regexes gave. */
+    private boolean collectModels(int[] longestAt, List<ModelMatch> models) {
+        int i = 0;
+        while (i < longestAt.length) {
+            int patternId = longestAt[i];
+            if (patternId < 0) {
+                i++;
+                continue;
+            }
+            int end = i + patterns[patternId].length();
+            models.add(new ModelMatch(canonical[patternId], i, end));
+            i = end;
+        }
+        return !models.isEmpty();
+    }
+
+    private static boolean isDigitBoundary(String text, int start, int end) {
+        return (start == 0 || !Character.isDigit(text.charAt(start - 1)))
+            && (end >= text.length() || !Character.isDigit(text.charAt(end)));
+    }
+
+    private static String normalize(String model) {
+        return model.toLowerCase(Locale.ROOT).replaceAll("\\s+", "");
+    }
+
+    @FunctionalInterface
+    interface MatchHandler {
+        /** Returns false to stop scanning. */
+        boolean onMatch(int patternId, int start, int end);
+    }
+
+    @FunctionalInterface
+    interface Checkpoint {
+        /** Returns false to stop scanning. */
+        boolean reached();
+    }
+
+    /**
+     * ASCII case-insensitive Aho-Corasick automaton compiled to a dense transition table.
+     * Characters that appear in no pattern all share one alphabet slot.
+     */
+    static final class AhoCorasick {
+        private final int[] alphabet = new int[128];
+        private final int alphabetSize;
+        private final int[][] delta;
+        private final int[][] outputs;
+        private final int[] lengths;
+
+        AhoCorasick(String[] patterns) {
+            Arrays.fill(alphabet, 0);
+            int size = 1;
+            for (String pattern : patterns) {
+                for (char c : pattern.toLowerCase(Locale.ROOT).toCharArray()) {
+                    if (c < 128 && alphabet[c] == 0) alphabet[c] = size++;
+                }
+            }
+            for (char c = 'A'; c <= 'Z'; c++) alphabet[c] = alphabet[Character.toLowerCase(c)];
+            this.alphabetSize = size;
+
+            List<int[]> trie = new ArrayList<>();
+            List<List<Integer>> out = new ArrayList<>();
+            trie.add(new int[alphabetSize]);
+            out.add(new ArrayList<>());
+            lengths = new int[patterns.length];
+            for (int p = 0; p < patterns.length; p++) {
+                String pattern = patterns[p].toLowerCase(Locale.ROOT);
+                lengths[p] = pattern.length();
+                int node = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int a = symbol(pattern.charAt(i));
+                    if (trie.get(node)[a] == 0) {
+                        trie.get(node)[a] = trie.size();
+                        trie.add(new int[alphabetSize]);
+                        out.add(new ArrayList<>());
+                    }
+                    node = trie.get(node)[a];
+                }
+                out.get(node).add(p);
+            }
+
+            // Breadth-first: fill fail transitions so every (state, symbol) pair is a direct lookup
+            int[] fail = new int[trie.size()];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int a = 0; a < alphabetSize; a++) {
+                int child = trie.get(0)[a];
+                if (child != 0) queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                out.get(node).addAll(out.get(fail[node]));
+                for (int a = 0; a < alphabetSize; a++) {
+                    int child = trie.get(node)[a];
+                    if (child != 0) {
+                        fail[child] = trie.get(fail[node])[a];
+                        queue.add(child);
+                    } else {
+                        trie.get(node)[a] = trie.get(fail[node])[a];
+                    }
+                }
+            }
+
+            delta = trie.toArray(new int[0][]);
+            outputs = new int[out.size()][];
+            for (int i = 0; i < out.size(); i++) {
+                outputs[i] = out.get(i).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        private int symbol(char c) {
+            return c < 128 ? alphabet[c] : 0;
+        }
+
+        /**
+         * Reports every pattern occurrence in order of end offset. {@code checkpoint} runs when the
+         * scan reaches offset {@code checkpointAt}, so callers can bail out early.
+         */
+        void scan(String text, MatchHandler handler, int checkpointAt, Checkpoint checkpoint) {
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (i == checkpointAt && !checkpoint.reached()) return;
+                state = delta[state][symbol(text.charAt(i))];
+                for (int patternId : outputs[state]) {
+                    if (!handler.onMatch(patternId, i + 1 - lengths[patternId], i + 1)) return;
+                }
+            }
+        }
+    }
+}
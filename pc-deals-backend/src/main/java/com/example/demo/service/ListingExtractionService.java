@@ -0,0 +1,290 @@
+package com.example.demo.service;
+
+import com.example.demo.config.RequestBudget;
+import com.example.demo.model.ListingCandidate;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.*;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Turns candidate posts into model/price pairs with OpenAI. Candidates are packed into
+ * multi-listing requests ("Listing 1", "Listing 2", ...) up to a character budget so the fixed
+ * instruction prompt is paid once per batch, and batches run concurrently on the extraction
+ * executor. {@link ListingPromptBuilder} trims each listing to its GPU and price lines first.
+ */
+@Service
+public class ListingExtractionService implements ExtractionEngine {
+    private static final Logger logger = Logger.getLogger(ListingExtractionService.class.getName());
+
+    // Bump whenever the prompt (ListingPromptBuilder) or the model changes so cached extractions
+    // from the old prompt are dropped
+    public static final String PROMPT_VERSION = "v2";
+
+    @Value("${openai.api.key}")
+    private String openaiApiKey;
+
+    @Value("${openai.api.base-url:https://api.openai.com}")
+    private String openaiBaseUrl;
+
+    // Roughly 4 characters per token, so the default keeps listing text near 1,500 tokens
+    @Value("${openai.extraction.batch-char-budget:6000}")
+    private int batchCharBudget;
+
+    @Value("${openai.extraction.max-posts-per-batch:8}")
+    private int maxPostsPerBatch;
+
+    @Autowired
+    @Qualifier("openAiRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ExecutorService extractionExecutor;
+
+    @Autowired
+    private Bucket extractionPacer;
+
+    @Autowired
+    @Qualifier("openAiRequestBudget")
+    private RequestBudget openAiRequestBudget;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ExtractionCache extractionCache;
+
+    @Autowired
+    private ListingPromptBuilder listingPromptBuilder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private DistributionSummary postsPerCall;
+    private Timer latencyPerPost;
+    private DistributionSummary promptTokens;
+    private DistributionSummary cachedPromptTokens;
+    private DistributionSummary trimmedTokens;
+
+    @PostConstruct
+    void registerMetrics() {
+        postsPerCall = DistributionSummary.builder("extraction.posts.per.call")
+            .description("Reddit posts packed into one OpenAI request")
+            .register(meterRegistry);
+        latencyPerPost = Timer.builder("extraction.latency.per.post")
+            .description("OpenAI request latency divided by the posts in the request")
+            .register(meterRegistry);
+        promptTokens = DistributionSummary.builder("extraction.prompt.tokens")
+            .description("Prompt tokens per OpenAI request, as billed")
+            .tag("kind", "total")
+            .register(meterRegistry);
+        cachedPromptTokens = DistributionSummary.builder("extraction.prompt.tokens")
+            .description("Prompt tokens per OpenAI request, as billed")
+            .tag("kind", "cached")
+            .register(meterRegistry);
+        trimmedTokens = DistributionSummary.builder("extraction.prompt.tokens.trimmed")
+            .description("Estimated listing tokens per request left out by the prompt builder")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String name() {
+        return "llm";
+    }
+
+    /**
+     * Extracts every candidate, answering from the extraction cache where possible and sending
+     * the rest at most max-in-flight requests at a time, paced by the token bucket. The returned
+     * list lines up index-for-index with the input, with null for posts whose request failed.
+     */
+    @Override
+    public List<List<Map<String, Object>>> extractAll(List<ListingCandidate> candidates) throws InterruptedException {
+        List<List<Map<String, Object>>> results = new ArrayList<>();
+        List<ListingCandidate> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (ListingCandidate candidate : candidates) {
+            List<Map<String, Object>> cached = extractionCache.get(candidate);
+            if (cached == null) {
+                missIndexes.add(results.size());
+                misses.add(candidate);
+            }
+            results.add(cached);
+        }
+
+        List<List<ListingCandidate>> batches = pack(misses);
+        List<Future<List<List<Map<String, Object>>>>> futures = new ArrayList<>();
+        for (List<ListingCandidate> batch : batches) {
+            futures.add(extractionExecutor.submit(() -> extractBatch(batch)));
+        }
+
+        int next = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            List<List<Map<String, Object>>> batchResults;
+            try {
+                batchResults = futures.get(i).get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                batchResults = new ArrayList<>();
+                for (int j = 0; j < batches.get(i).size(); j++) batchResults.add(null);
+            }
+            for (List<Map<String, Object>> postResult : batchResults) {
+                ListingCandidate candidate = misses.get(next);
+                // null marks a failed request; only real answers (including "no GPUs") are cached
+                if (postResult != null) extractionCache.put(candidate, asSingleListing(postResult));
+                results.set(missIndexes.get(next++), postResult);
+            }
+        }
+        return results;
+    }
+
+    /** Rewrites listing_id to "Listing 1" so a cached result reads the same whatever batch it came from. */
+    private static List<Map<String, Object>> asSingleListing(List<Map<String, Object>> postResult) {
+        List<Map<String, Object>> copy = new ArrayList<>();
+        for (Map<String, Object> entry : postResult) {
+            Map<String, Object> normalized = new LinkedHashMap<>(entry);
+            normalized.put("listing_id", "Listing 1");
+            copy.add(normalized);
+        }
+        return copy;
+    }
+
+    public List<Map<String, Object>> analyzePostWithOpenAI(String combinedListings) {
+        try {
+            return requestExtraction(listingPromptBuilder.messages(combinedListings));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return List.of();
+        }
+    }
+
+    /** Greedy, order-preserving packing by listing text length. */
+    private List<List<ListingCandidate>> pack(List<ListingCandidate> candidates) {
+        List<List<ListingCandidate>> batches = new ArrayList<>();
+        List<ListingCandidate> current = new ArrayList<>();
+        int currentChars = 0;
+        for (ListingCandidate candidate : candidates) {
+            int chars = listingPromptBuilder.listingText(candidate).length();
+            if (!current.isEmpty() && (currentChars + chars > batchCharBudget || current.size() >= maxPostsPerBatch)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentChars = 0;
+            }
+            current.add(candidate);
+            currentChars += chars;
+        }
+        if (!current.isEmpty()) batches.add(current);
+        return batches;
+    }
+
+    /**
+     * Sends one batch and splits the response back per post using listing_id. If the response
+     * can't be parsed or points at a listing that isn't in the batch, each post is retried on
+     * its own so one bad answer doesn't drop the whole batch. A post whose request failed
+     * outright comes back as null.
+     */
+    private List<List<Map<String, Object>>> extractBatch(List<ListingCandidate> batch) throws InterruptedException {
+        List<List<Map<String, Object>>> perPost = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) perPost.add(new ArrayList<>());
+
+        List<String> texts = new ArrayList<>();
+        int trimmed = 0;
+        for (ListingCandidate candidate : batch) {
+            String text = listingPromptBuilder.listingText(candidate);
+            texts.add(text);
+            trimmed += ListingPromptBuilder.estimateTokens(candidate.text()) - ListingPromptBuilder.estimateTokens(text);
+        }
+        trimmedTokens.record(trimmed);
+
+        try {
+            for (Map<String, Object> entry : timedExtraction(listingPromptBuilder.messages(texts), batch.size())) {
+                Object listingId = entry.get("listing_id");
+                if (listingId == null) continue;
+                String digits = listingId.toString().replaceAll("[^0-9]", "");
+                int index = digits.isEmpty() ? -1 : Integer.parseInt(digits) - 1;
+                if (index < 0 || index >= batch.size()) {
+                    throw new IllegalStateException("Unknown listing_id in batched response: " + listingId);
+                }
+                perPost.get(index).add(entry);
+            }
+            return perPost;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                e.printStackTrace();
+                List<List<Map<String, Object>>> failed = new ArrayList<>();
+                failed.add(null);
+                return failed;
+            }
+            logger.warning("Batched extraction failed for " + batch.size() + " posts, retrying one by one: " + e.getMessage());
+            List<List<Map<String, Object>>> fallback = new ArrayList<>();
+            for (ListingCandidate candidate : batch) {
+                fallback.add(extractBatch(List.of(candidate)).get(0));
+            }
+            return fallback;
+        }
+    }
+
+    private List<Map<String, Object>> timedExtraction(List<Map<String, Object>> messages, int posts) throws Exception {
+        extractionPacer.asBlocking().consume(1);
+        long start = System.nanoTime();
+        List<Map<String, Object>> results = requestExtraction(messages);
+        long elapsed = System.nanoTime() - start;
+        postsPerCall.record(posts);
+        latencyPerPost.record(elapsed / posts, TimeUnit.NANOSECONDS);
+        return results;
+    }
+
+    private List<Map<String, Object>> requestExtraction(List<Map<String, Object>> messages) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(openaiApiKey);
+
+        Map<String, Object> requestBody = Map.of(
+            "model", "gpt-3.5-turbo",  // or "gpt-4"
+            "messages", messages,
+            "temperature", 0.2
+        );
+
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+        // 429s honor OpenAI's Retry-After through the request budget before the next attempt
+        ResponseEntity<String> response = openAiRequestBudget.withRetries(() -> restTemplate.exchange(
+            openaiBaseUrl + "/v1/chat/completions",
+            HttpMethod.POST,
+            request,
+            String.class
+        ));
+
+        JsonNode json = objectMapper.readTree(response.getBody());
+        JsonNode usage = json.path("usage");
+        if (usage.has("prompt_tokens")) {
+            promptTokens.record(usage.path("prompt_tokens").asLong());
+            cachedPromptTokens.record(usage.path("prompt_tokens_details").path("cached_tokens").asLong());
+        }
+        String rawJson = json
+            .path("choices").path(0)
+            .path("message").path("content").asText();
+
+        return objectMapper.readValue(rawJson, new TypeReference<>() {});
+    }
+}
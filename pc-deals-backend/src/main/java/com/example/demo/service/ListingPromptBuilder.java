@@ -0,0 +1,192 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the chat messages for an extraction request. The instructions never change, so they go
+ * first as their own system message: providers that cache prompt prefixes (OpenAI does from 1,024
+ * tokens on the models that support it) can then reuse them across requests, and nothing that
+ * varies per batch comes before them.
+ *
+ * Each listing is cut down to the parts a GPU/price answer can come from: sentences with a GPU
+ * model, a currency amount or sold/shipped/pending wording, plus context-lines sentences either
+ * side of them. Links are dropped (a markdown link keeps its text) and the title is always sent
+ * whole. Timestamp links, shipping policies and heatware blurbs usually fall away. A listing
+ * where nothing matches goes out cleaned but uncut.
+ */
+@Component
+public class ListingPromptBuilder {
+
+    public static final String INSTRUCTIONS = """
+        You are a system that extracts used GPU model and price pairs from Reddit listings on r/hardwareswap.
+
+        Instructions:
+        - Only return discrete desktop graphics cards (GPUs) from NVIDIA (1000–5000 series) or AMD (6000, 7000, 9000 series).
+        - There can be multiple GPUs in a single listing, so extract each one separately.
+        - Exclude CPUs, motherboards, PSUs, RAM, bundles with other parts, and especially laptops, full PCs, custom pc, custom gaming pc, gaming pc, or accessories.
+        - Ignore numbers like "6800" or "4080" if they appear in the context of memory speeds, storage speeds, or other specs (e.g., "6800 MB/s", "4080 MT/s"). Use context to ensure you're only extracting GPU models being sold as standalone graphics cards.
+        - Exclude unreasonable prices
+        - Skip listings where the GPU is untested, broken, for parts, or missing key components.
+        - Skip GPU waterblocks.
+        - Ignore trade-only listings. If there is no clear asking price, exclude it.
+        - Include sold listings with a known selling price.
+        - If both local and shipped prices are given, return the **shipped** price.
+        - Match each GPU with its correct price using context.
+        - Listings are excerpts: only the title and the sentences around GPUs and prices are included.
+        - Standardize GPU names like this:
+        - Include only the model (e.g., "3080 Ti", "6800 XT", "4090")
+        - If a GPU name includes extra brand text (e.g., "5070 Gaming Trio", "5070 Windforce"), extract the model number only (e.g., "5070").
+        - Use a space between numbers and suffixes like "Ti", "XT", "Super"
+        - Do not include prefixes in the model like "RTX", "RX", or any brand names.
+        - Round all prices to the nearest dollar and return as integers (no dollar sign).
+
+        Valid GPU Models (only extract these) case and space insensitive:
+            1050, 1050 Ti, 1060, 1070, 1070 Ti, 1080, 1080 Ti,
+            1650, 1660, 1660 Super, 1660 Ti,
+            2060, 2060 Super, 2070, 2070 Super, 2080, 2080 Super, 2080 Ti,
+            3050, 3060, 3060 Ti, 3070, 3070 Ti, 3080, 3080 Ti, 3090, 3090 Ti,
+            4060, 4060 Ti, 4070, 4070 Super, 4070 Ti, 4070 Ti Super,
+            4080, 4080 Super, 4090,
+            5070, 5070 Ti, 5080, 5090,
+            6600, 6600 XT, 6650 XT, 6700 XT, 6750 XT,
+            6800, 6800 XT, 6900 XT, 6950 XT,
+            7600, 7700 XT, 7800 XT, 7900 GRE, 7900 XT, 7900 XTX,
+            9070, 9070 XT
+
+        Format:
+        Return a JSON array only. For each GPU, include:
+        - model (e.g. "3080 Ti")
+        - price (integer)
+        - listing_id (e.g. "Listing 1", "Listing 2", etc.) to match it back to the Reddit listing it came from
+
+        Example output:
+        [
+            { "model": "3080 Ti", "price": 750, "listing_id": "Listing 1" },
+            { "model": "6800 XT", "price": 620, "listing_id": "Listing 2" }
+        ]
+        """;
+
+    private static final Pattern MARKDOWN_LINK = Pattern.compile("\\[([^\\]\\n]*)]\\((?:https?://|www\\.)[^)\\s]*\\)");
+    private static final Pattern BARE_LINK = Pattern.compile("(?:https?://|www\\.)\\S+");
+    private static final Pattern MARKUP = Pattern.compile("&amp;#x200B;|&#x200B;|\\u200B|\\*\\*|__|^#+\\s*|^>\\s*|^[-*]\\s+");
+    private static final Pattern TABLE_RULE = Pattern.compile("^[|:\\-\\s]*$");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+(?=[A-Z$0-9])");
+    private static final Pattern CURRENCY = Pattern.compile(
+        "\\$\\s?\\d|\\d\\s?\\$|\\d\\s?(?:usd|dollars)\\b|\\b\\d{2,5}\\s?(?:shipped|local|obo)\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern STATUS = Pattern.compile("\\b(?:sold|shipped|pending)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE = Pattern.compile("[ \\t\\u00A0]+");
+
+    // Roughly how the GPT tokenizers split text: words with their leading space, digits in
+    // threes, punctuation runs
+    private static final Pattern TOKEN_PIECE = Pattern.compile(
+        "'(?:[sdmt]|ll|ve|re)| ?\\p{L}+| ?\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+|\\s+");
+
+    private final ListingClassifier listingClassifier;
+    private final int contextLines;
+    private final boolean trim;
+
+    public ListingPromptBuilder(ListingClassifier listingClassifier,
+                                @Value("${openai.prompt.context-lines:1}") int contextLines,
+                                @Value("${openai.prompt.trim:true}") boolean trim) {
+        this.listingClassifier = listingClassifier;
+        this.contextLines = contextLines;
+        this.trim = trim;
+    }
+
+    /** The system and user messages for one request over the given listing texts. */
+    public List<Map<String, Object>> messages(List<String> listingTexts) {
+        StringBuilder listings = new StringBuilder();
+        for (int i = 0; i < listingTexts.size(); i++) {
+            if (i > 0) listings.append("\n\n");
+            listings.append("Listing ").append(i + 1).append(":\n").append(listingTexts.get(i));
+        }
+        return messages(listings.toString());
+    }
+
+    public List<Map<String, Object>> messages(String combinedListings) {
+        return List.of(
+            Map.of("role", "system", "content", INSTRUCTIONS),
+            Map.of("role", "user", "content", "Reddit Listings:\n" + combinedListings));
+    }
+
+    /** What the request carries for this post: "title\n\nexcerpt". */
+    public String listingText(ListingCandidate candidate) {
+        return listingText(candidate.title(), candidate.description());
+    }
+
+    public String listingText(String title, String description) {
+        if (!trim) return title + "\n\n" + description;
+        return title + "\n\n" + excerpt(description == null ? "" : description);
+    }
+
+    String excerpt(String description) {
+        List<String> sentences = new ArrayList<>();
+        List<Integer> paragraph = new ArrayList<>();
+        int paragraphs = 0;
+        for (String line : description.split("\\R")) {
+            String cleaned = clean(line);
+            if (cleaned.isEmpty()) continue;
+            for (String sentence : SENTENCE_END.split(cleaned)) {
+                sentences.add(sentence);
+                paragraph.add(paragraphs);
+            }
+            paragraphs++;
+        }
+
+        boolean[] keep = new boolean[sentences.size()];
+        boolean any = false;
+        for (int i = 0; i < sentences.size(); i++) {
+            if (!relevant(sentences.get(i))) continue;
+            any = true;
+            for (int j = Math.max(0, i - contextLines); j <= Math.min(sentences.size() - 1, i + contextLines); j++) {
+                keep[j] = true;
+            }
+        }
+
+        StringBuilder excerpt = new StringBuilder();
+        int lastParagraph = -1;
+        for (int i = 0; i < sentences.size(); i++) {
+            if (any && !keep[i]) continue;
+            if (lastParagraph >= 0) excerpt.append(paragraph.get(i) == lastParagraph ? " " : "\n");
+            excerpt.append(sentences.get(i));
+            lastParagraph = paragraph.get(i);
+        }
+        return excerpt.toString();
+    }
+
+    private boolean relevant(String sentence) {
+        return CURRENCY.matcher(sentence).find() || STATUS.matcher(sentence).find()
+            || !listingClassifier.findModels(sentence).isEmpty();
+    }
+
+    private static String clean(String line) {
+        String cleaned = MARKDOWN_LINK.matcher(line).replaceAll(match -> Matcher.quoteReplacement(match.group(1)));
+        cleaned = BARE_LINK.matcher(cleaned).replaceAll("");
+        cleaned = MARKUP.matcher(cleaned.strip()).replaceAll("");
+        cleaned = WHITESPACE.matcher(cleaned).replaceAll(" ").strip();
+        // Link-only lines leave "Timestamps:" and the like behind
+        if (cleaned.endsWith(":") && cleaned.indexOf(' ') < 0) return "";
+        return TABLE_RULE.matcher(cleaned).matches() ? "" : cleaned;
+    }
+
+    /** Approximate GPT token count; good for comparing prompt sizes, not for billing. */
+    public static int estimateTokens(String text) {
+        int tokens = 0;
+        Matcher piece = TOKEN_PIECE.matcher(text);
+        while (piece.find()) {
+            int length = piece.end() - piece.start();
+            // Long or rare words split further; about six characters a piece is typical
+            tokens += Character.isLetter(text.charAt(piece.end() - 1)) && length > 7 ? 1 + (length - 2) / 6 : 1;
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.demo.service;
+
+import com.example.demo.config.RequestBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Re-checks saved listings against Reddit so a price can be told apart from a sale. Posts are
+ * looked up 100 at a time through /api/info. Each lookup records the flair in listing_status,
+ * the first time it was seen CLOSED in sold_at, and the first time it was seen removed or
+ * deleted in removed_at.
+ *
+ * How often a post is re-checked depends on its age, per tiers-hours ("max-age:every" pairs,
+ * youngest first). With the defaults a post is checked hourly on its first day, every six hours
+ * for the rest of its first week and daily until it is 30 days old. After that it is left as it
+ * is. Sold and removed posts are not checked again. Each run takes the posts that are due,
+ * oldest check first, up to max-posts-per-run.
+ */
+// Disabled in the replay profile: the stand-in server only serves listing pages
+@Service
+@ConditionalOnProperty(name = "reddit.status-refresh.enabled", havingValue = "true", matchIfMissing = true)
+public class ListingStatusRefresher {
+    private static final Logger logger = Logger.getLogger(ListingStatusRefresher.class.getName());
+
+    public static final String SELLING = "SELLING";
+    public static final String CLOSED = "CLOSED";
+    public static final String REMOVED = "REMOVED";
+
+    private static final int POSTS_PER_LOOKUP = 100;
+
+    private record Tier(Duration maxAge, Duration every) {}
+
+    @Value("${reddit.status-refresh.tiers-hours:24:1,168:6,720:24}")
+    private String tiersHours;
+
+    @Value("${reddit.status-refresh.max-posts-per-run:1000}")
+    private int maxPostsPerRun;
+
+    @Autowired
+    private RedditService redditService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private List<Tier> tiers;
+    private Counter lookups;
+    private Counter soldTransitions;
+    private Counter removedTransitions;
+
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    @PostConstruct
+    void init() {
+        tiers = new ArrayList<>();
+        for (String tier : tiersHours.split(",")) {
+            String[] hours = tier.strip().split(":");
+            tiers.add(new Tier(Duration.ofHours(Long.parseLong(hours[0].strip())), Duration.ofHours(Long.parseLong(hours[1].strip()))));
+        }
+        tiers.sort((a, b) -> a.maxAge().compareTo(b.maxAge()));
+
+        lookups = Counter.builder("reddit.status.lookups")
+            .description("/api/info calls made by the listing status refresher")
+            .register(meterRegistry);
+        soldTransitions = transitions("closed");
+        removedTransitions = transitions("removed");
+    }
+
+    @Scheduled(fixedDelayString = "${reddit.status-refresh.interval-ms:600000}",
+               initialDelayString = "${reddit.status-refresh.initial-delay-ms:120000}")
+    public void refreshScheduled() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.severe("Listing status refresh failed: " + e.getMessage());
+        }
+    }
+
+    /** One pass over the posts that are due. Stops early if Reddit can't be reached. */
+    public synchronized Map<String, Object> refresh() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<String> due = duePosts(now);
+
+        int checked = 0;
+        int sold = 0;
+        int removed = 0;
+        String error = null;
+        for (int from = 0; from < due.size(); from += POSTS_PER_LOOKUP) {
+            List<String> ids = due.subList(from, Math.min(due.size(), from + POSTS_PER_LOOKUP));
+            List<RedditPageReader.PostStatus> statuses;
+            try {
+                statuses = redditService.fetchStatuses(ids);
+            } catch (RequestBudget.UnavailableException e) {
+                error = e.getMessage();
+                break;
+            } catch (RuntimeException e) {
+                if (!RequestBudget.isRetryable(e)) throw e;
+                error = e.getMessage();
+                break;
+            }
+            lookups.increment();
+
+            Timestamp checkedAt = Timestamp.valueOf(LocalDateTime.now(clock));
+            List<Object[]> updates = new ArrayList<>();
+            for (RedditPageReader.PostStatus status : statuses) {
+                String listingStatus = status.removed() ? REMOVED
+                    : CLOSED.equalsIgnoreCase(status.flair()) ? CLOSED : SELLING;
+                updates.add(new Object[] {listingStatus, checkedAt, CLOSED.equals(listingStatus), checkedAt,
+                    REMOVED.equals(listingStatus), checkedAt, status.id(), listingStatus});
+            }
+            // The sold/removed counts come from rows whose status actually changed
+            int[] changed = jdbcTemplate.batchUpdate(
+                "UPDATE gpu_prices SET listing_status = ?, status_checked_at = ?, " +
+                "sold_at = CASE WHEN ? THEN COALESCE(sold_at, ?) END, " +
+                "removed_at = CASE WHEN ? THEN COALESCE(removed_at, ?) END " +
+                "WHERE reddit_post_id = ? AND listing_status IS DISTINCT FROM ?",
+                updates);
+            for (int i = 0; i < changed.length; i++) {
+                if (changed[i] <= 0) continue;
+                Object status = updates.get(i)[0];
+                if (CLOSED.equals(status)) sold++;
+                if (REMOVED.equals(status)) removed++;
+            }
+            // Unchanged posts and posts Reddit no longer returns only get their check time moved
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE gpu_prices SET status_checked_at = ? WHERE reddit_post_id = ANY(?)");
+                statement.setTimestamp(1, checkedAt);
+                statement.setArray(2, connection.createArrayOf("varchar", ids.toArray()));
+                return statement;
+            });
+            checked += ids.size();
+        }
+        soldTransitions.increment(sold);
+        removedTransitions.increment(removed);
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("ran_at", now.toString());
+        run.put("due_posts", due.size());
+        run.put("checked_posts", checked);
+        run.put("newly_sold", sold);
+        run.put("newly_removed", removed);
+        if (error != null) run.put("error", error);
+        lastRun = run;
+        if (!due.isEmpty()) {
+            logger.info(String.format("Listing status refresh: %d of %d due posts checked, %d newly sold, %d newly removed%s",
+                checked, due.size(), sold, removed, error == null ? "" : " (stopped: " + error + ")"));
+        }
+        return run;
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("tiers_hours", tiersHours);
+        state.put("last_run", lastRun);
+        state.put("statuses", jdbcTemplate.queryForList(
+            "SELECT COALESCE(listing_status, 'UNCHECKED') AS status, COUNT(DISTINCT reddit_post_id) AS posts " +
+            "FROM gpu_prices GROUP BY 1 ORDER BY 1"));
+        return state;
+    }
+
+    /**
+     * Unsold, unremoved posts younger than the oldest tier whose last check is older than their
+     * tier's interval, never-checked posts first.
+     */
+    private List<String> duePosts(LocalDateTime now) {
+        StringBuilder dueBefore = new StringBuilder("CASE");
+        List<Object> args = new ArrayList<>();
+        args.add(Timestamp.valueOf(now.minus(tiers.get(tiers.size() - 1).maxAge())));
+        for (Tier tier : tiers) {
+            dueBefore.append(" WHEN MAX(reddit_posted_at) >= ? THEN ?");
+            args.add(Timestamp.valueOf(now.minus(tier.maxAge())));
+            args.add(Timestamp.valueOf(now.minus(tier.every())));
+        }
+        dueBefore.append(" END");
+        args.add(maxPostsPerRun);
+
+        return jdbcTemplate.queryForList(
+            "SELECT reddit_post_id FROM gpu_prices " +
+            "WHERE sold_at IS NULL AND removed_at IS NULL AND reddit_posted_at >= ? " +
+            "GROUP BY reddit_post_id " +
+            "HAVING MAX(status_checked_at) IS NULL OR MAX(status_checked_at) < " + dueBefore + " " +
+            "ORDER BY MAX(status_checked_at) NULLS FIRST, MAX(reddit_posted_at) DESC " +
+            "LIMIT ?",
+            String.class, args.toArray());
+    }
+
+    private Counter transitions(String to) {
+        return Counter.builder("reddit.status.transitions")
+            .description("Saved listings first seen closed or removed by the status refresher")
+            .tag("to", to)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GPU;
+import com.example.demo.model.ListingCandidate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+@Component
+public class ListingValidator {
+    private static final Logger logger = Logger.getLogger(ListingValidator.class.getName());
+
+    @Autowired
+    private ListingClassifier listingClassifier;
+
+    /**
+     * Validates the model/price pairs extracted for one post and turns the ones that pass into
+     * (unsaved) GPU rows for the batch writer.
+     */
+    public List<GPU> validate(ListingCandidate candidate, List<Map<String, Object>> results) {
+        List<GPU> listings = new ArrayList<>();
+        for (Map<String, Object> entry : results) {
+            // Add proper null checks for price
+            Object priceObj = entry.get("price");
+            if (priceObj == null) {
+                logger.fine("Skipping listing with null price");
+                continue;
+            }
+            
+            int price;
+            try {
+                if (priceObj instanceof Number) {
+                    price = ((Number) priceObj).intValue();
+                } else if (priceObj instanceof String) {
+                    price = Integer.parseInt((String) priceObj);
+                } else {
+                    logger.fine("Skipping listing with invalid price type: " + priceObj.getClass());
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                logger.fine("Skipping listing with invalid price format: " + priceObj);
+                continue;
+            }
+            
+            if (price <= 0) continue; // Skip listings with no valid price
+            if (!entry.containsKey("listing_id")) continue;
+            if (entry.get("model") == null) continue;
+
+            String extractedModel = entry.get("model").toString();
+            // Check if it's a known GPU model
+            if (!listingClassifier.isKnownModel(extractedModel)) {
+                logger.fine("Rejected non-GPU model: " + extractedModel);
+                continue;
+            }
+
+            String normalizedModel = extractedModel.toLowerCase().replaceAll("\\s+", "");
+            String normalizedTitle = candidate.title().toLowerCase().replaceAll("\\s+", "");
+
+            if (!normalizedTitle.contains(normalizedModel)) {
+                logger.fine("Skipping " + extractedModel + " because it was not in the title:\n" + candidate.title());
+                continue;
+            }
+
+            // Stored under the classifier's spelling, so "3080ti" and "3080 Ti" hit the same (post, model) row
+            listings.add(new GPU(listingClassifier.canonicalModel(extractedModel), price, candidate.url(),
+                candidate.postedAt(), candidate.redditPostId()));
+        }
+        return listings;
+    }
+}
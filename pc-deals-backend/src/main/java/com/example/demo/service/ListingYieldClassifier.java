@@ -0,0 +1,322 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.util.NaiveBayes;
+import com.example.demo.util.SimHash;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Predicts whether a candidate post will yield any listing before it is sent to the LLM. Buying
+ * posts flaired as selling, trade-only posts and posts that only mention a GPU pass the title
+ * checks but come back empty, and each of them still costs a full round trip.
+ *
+ * A {@link NaiveBayes} model over the post's words (split into have, want and body) and a few
+ * structural features is retrained daily from extraction_training_posts: the text of every post
+ * sent to extraction, labelled by whether extraction returned any listing. The label is stored
+ * with the post, so purging or deleting its rows later doesn't relabel it. Posts scoring below the
+ * threshold skip extraction. Each run holds out the newest holdout-share of posts. A model that
+ * would have skipped more than max-missed-share of the yielding ones there is stored but not used.
+ *
+ * Skipped posts are never extracted, so they never reach the training data. Instead explore-rate
+ * of would-be-skipped posts are extracted anyway and marked explored. Each explored post stands in
+ * for the 1 / explore-rate posts the model skipped, and is weighted that way in training and in
+ * the holdout. Otherwise an active model would see only the posts it let through, and its missed
+ * share would leave out exactly the yielding posts it skips.
+ */
+@Component
+public class ListingYieldClassifier {
+    private static final Logger logger = Logger.getLogger(ListingYieldClassifier.class.getName());
+
+    public enum Decision { EXTRACT, SKIP, EXPLORE }
+
+    /** A training post; weight is how many posts it stands for (see {@link #example}). */
+    public record Example(List<String> features, boolean yielded, double weight) {
+        public Example(List<String> features, boolean yielded) {
+            this(features, yielded, 1);
+        }
+    }
+
+    /** How a model did on posts it wasn't trained on, at one threshold. Counts are weighted. */
+    public record Evaluation(double posts, double yielding, double skipped, double missed) {
+        public double skippedShare() {
+            return posts == 0 ? 0 : skipped / posts;
+        }
+
+        /** Share of yielding posts the model would have skipped. */
+        public double missedShare() {
+            return yielding == 0 ? 0 : missed / yielding;
+        }
+    }
+
+    private static final Pattern WANT_MARKER = Pattern.compile("\\[\\s*w\\s*]", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DOLLAR_AMOUNT = Pattern.compile("\\$\\s?\\d|\\d\\s?\\$");
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+
+    @Value("${extraction.preclassifier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${extraction.preclassifier.threshold:0.02}")
+    private double threshold;
+
+    @Value("${extraction.preclassifier.explore-rate:0.05}")
+    private double exploreRate;
+
+    @Value("${extraction.preclassifier.min-training-posts:300}")
+    private int minTrainingPosts;
+
+    @Value("${extraction.preclassifier.holdout-share:0.2}")
+    private double holdoutShare;
+
+    @Value("${extraction.preclassifier.max-missed-share:0.02}")
+    private double maxMissedShare;
+
+    @Value("${extraction.preclassifier.training-days:180}")
+    private int trainingDays;
+
+    @Value("${extraction.preclassifier.min-feature-count:2}")
+    private int minFeatureCount;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ListingClassifier listingClassifier;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Clock clock;
+
+    private volatile NaiveBayes.Model model;
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    private Counter skipped;
+    private Counter explored;
+
+    @PostConstruct
+    void load() {
+        skipped = Counter.builder("extraction.preclassifier.posts")
+            .description("Candidate posts the pre-classifier scored below the threshold")
+            .tag("decision", "skip")
+            .register(meterRegistry);
+        explored = Counter.builder("extraction.preclassifier.posts")
+            .description("Candidate posts the pre-classifier scored below the threshold")
+            .tag("decision", "explore")
+            .register(meterRegistry);
+        if (!enabled) return;
+        try {
+            List<String> rows = jdbcTemplate.queryForList(
+                "SELECT model_json FROM yield_classifier_models WHERE active ORDER BY id DESC LIMIT 1", String.class);
+            if (!rows.isEmpty()) {
+                model = objectMapper.readValue(rows.get(0), NaiveBayes.Model.class);
+                logger.info("Loaded yield pre-classifier with " + model.counts().size() + " features");
+            }
+        } catch (Exception e) {
+            logger.warning("Could not load the yield pre-classifier, extracting every post: " + e.getMessage());
+        }
+    }
+
+    public Decision decide(ListingCandidate candidate) {
+        NaiveBayes.Model current = model;
+        if (!enabled || current == null) return Decision.EXTRACT;
+        if (current.probability(features(listingClassifier, candidate.title(), candidate.description())) >= threshold) {
+            return Decision.EXTRACT;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < exploreRate) {
+            explored.increment();
+            return Decision.EXPLORE;
+        }
+        skipped.increment();
+        return Decision.SKIP;
+    }
+
+    /**
+     * Keeps the text of posts that went to extraction, with their results (parallel to the
+     * candidates, none null), for the next retraining. A failure only costs training data, so it
+     * is logged rather than failing the page.
+     */
+    public void remember(List<ListingCandidate> candidates, List<List<Map<String, Object>>> results,
+                         Set<String> exploredPostIds) {
+        if (!enabled || candidates.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            ListingCandidate candidate = candidates.get(i);
+            rows.add(new Object[] {
+                candidate.redditPostId(), candidate.title(), candidate.description() == null ? "" : candidate.description(),
+                Timestamp.valueOf(candidate.postedAt()), exploredPostIds.contains(candidate.redditPostId()),
+                !results.get(i).isEmpty()
+            });
+        }
+        try {
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO extraction_training_posts (reddit_post_id, title, description, reddit_posted_at, explored, yielded) " +
+                "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (reddit_post_id) DO NOTHING",
+                rows);
+        } catch (Exception e) {
+            logger.warning("Could not store " + rows.size() + " training posts: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${extraction.preclassifier.retrain-cron:0 30 5 * * *}")
+    public synchronized Map<String, Object> retrain() {
+        if (!enabled) return describe();
+        LocalDateTime since = LocalDateTime.now(clock).minusDays(trainingDays);
+        jdbcTemplate.update("DELETE FROM extraction_training_posts WHERE reddit_posted_at < ?", Timestamp.valueOf(since));
+
+        // Oldest first, so the holdout is the newest posts
+        List<Example> examples = jdbcTemplate.query(
+            "SELECT title, description, yielded, explored FROM extraction_training_posts ORDER BY reddit_posted_at",
+            (rs, rowNum) -> example(features(listingClassifier, rs.getString(1), rs.getString(2)), rs.getBoolean(3),
+                rs.getBoolean(4), exploreRate));
+        long yielding = examples.stream().filter(Example::yielded).count();
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("trained_at", LocalDateTime.now(clock).toString());
+        run.put("training_posts", examples.size());
+        run.put("yielding_posts", yielding);
+        if (examples.size() < minTrainingPosts || yielding == 0 || yielding == examples.size()) {
+            run.put("outcome", "not enough training posts yet (need " + minTrainingPosts + " with both outcomes)");
+            lastRun = run;
+            logger.info("Yield pre-classifier not retrained: " + examples.size() + " training posts, " + yielding + " yielding");
+            return describe();
+        }
+
+        int split = (int) Math.round(examples.size() * (1 - holdoutShare));
+        List<Example> holdout = examples.subList(split, examples.size());
+        Evaluation evaluation = evaluate(train(examples.subList(0, split), minFeatureCount), holdout, threshold);
+        boolean active = evaluation.missedShare() <= maxMissedShare;
+        NaiveBayes.Model trained = train(examples, minFeatureCount);
+
+        try {
+            jdbcTemplate.update(
+                "INSERT INTO yield_classifier_models (training_posts, holdout_posts, threshold, holdout_skipped_share, " +
+                "holdout_missed_share, active, model_json) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                examples.size(), holdout.size(), threshold, evaluation.skippedShare(), evaluation.missedShare(), active,
+                objectMapper.writeValueAsString(trained));
+            jdbcTemplate.update(
+                "DELETE FROM yield_classifier_models WHERE id NOT IN (SELECT id FROM yield_classifier_models ORDER BY id DESC LIMIT 14)");
+        } catch (Exception e) {
+            logger.warning("Could not store the retrained yield pre-classifier: " + e.getMessage());
+        }
+        model = active ? trained : null;
+
+        run.put("holdout_posts", holdout.size());
+        run.put("holdout_skipped_share", evaluation.skippedShare());
+        run.put("holdout_missed_share", evaluation.missedShare());
+        run.put("outcome", active ? "active" : "inactive, would miss more than " + maxMissedShare + " of yielding posts");
+        lastRun = run;
+        logger.info(String.format("Yield pre-classifier retrained on %d posts: holdout skips %.1f%%, misses %.1f%% of yielding posts, %s",
+            examples.size(), 100 * evaluation.skippedShare(), 100 * evaluation.missedShare(), active ? "active" : "not used"));
+        return describe();
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        NaiveBayes.Model current = model;
+        state.put("enabled", enabled);
+        state.put("active", current != null);
+        state.put("threshold", threshold);
+        state.put("features", current == null ? 0 : current.counts().size());
+        state.put("skipped_posts", (long) skipped.count());
+        state.put("explored_posts", (long) explored.count());
+        state.put("last_run", lastRun);
+        return state;
+    }
+
+    /**
+     * A stored training post. An explored one was extracted although the model would have skipped
+     * it, a 1 in 1 / explore-rate chance, so it counts for that many posts.
+     */
+    public static Example example(List<String> features, boolean yielded, boolean explored, double exploreRate) {
+        return new Example(features, yielded, explored && exploreRate > 0 ? 1 / exploreRate : 1);
+    }
+
+    public static NaiveBayes.Model train(List<Example> examples, int minFeatureCount) {
+        return NaiveBayes.train(examples.stream().map(Example::features).toList(),
+            examples.stream().map(Example::yielded).toList(), examples.stream().map(Example::weight).toList(),
+            minFeatureCount);
+    }
+
+    public static Evaluation evaluate(NaiveBayes.Model model, List<Example> examples, double threshold) {
+        double posts = 0;
+        double yielding = 0;
+        double skipped = 0;
+        double missed = 0;
+        for (Example example : examples) {
+            boolean skip = model.probability(example.features()) < threshold;
+            posts += example.weight();
+            if (example.yielded()) yielding += example.weight();
+            if (skip) skipped += example.weight();
+            if (skip && example.yielded()) missed += example.weight();
+        }
+        return new Evaluation(posts, yielding, skipped, missed);
+    }
+
+    /**
+     * Words of the title before [W] ("h:"), after it ("w:") and of the body ("b:", plus adjacent
+     * pairs), with digit runs folded to "#" so "$450" and "$520" are the same feature. On top of
+     * that: where the GPU models are and how many prices the body has.
+     */
+    public static List<String> features(ListingClassifier listingClassifier, String title, String description) {
+        String body = description == null ? "" : description;
+        Matcher want = WANT_MARKER.matcher(title);
+        int wantStart = want.find() ? want.start() : title.length();
+
+        Set<String> features = new LinkedHashSet<>();
+        addWords(features, "h:", title.substring(0, wantStart), false);
+        addWords(features, "w:", title.substring(wantStart), false);
+        addWords(features, "b:", body, true);
+
+        boolean modelInHave = false;
+        boolean modelInWant = false;
+        for (ListingClassifier.ModelMatch match : listingClassifier.findModels(title)) {
+            if (match.start() < wantStart) modelInHave = true;
+            else modelInWant = true;
+        }
+        if (modelInHave) features.add("f:model-in-have");
+        if (modelInWant && !modelInHave) features.add("f:model-only-in-want");
+        if (!listingClassifier.findModels(body).isEmpty()) features.add("f:model-in-body");
+
+        int prices = 0;
+        Matcher amount = DOLLAR_AMOUNT.matcher(body);
+        while (amount.find()) prices++;
+        features.add("f:prices-" + Math.min(prices, 3));
+        return new ArrayList<>(features);
+    }
+
+    private static void addWords(Set<String> features, String prefix, String text, boolean pairs) {
+        String previous = null;
+        for (String token : SimHash.tokens(text)) {
+            String word = DIGITS.matcher(token).replaceAll("#");
+            features.add(prefix + word);
+            if (pairs && previous != null) features.add(prefix + previous + "_" + word);
+            previous = word;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The landing page's market snapshot, computed ahead of time and held as its JSON bytes, so serving
+ * it costs no database work. Anything that changes gpu_prices calls {@link #markChanged} once its
+ * transaction commits, which bumps a data version and has a single builder thread recompute the
+ * snapshot. Changes that arrive while a build runs are folded into one more build, so a burst of
+ * ingestion batches costs at most two.
+ *
+ * The snapshot covers the last 7 days relative to when it was built, so one older than max-age-ms
+ * is rebuilt even with nothing new, to let old listings age out. Requests never build: until the
+ * first build succeeds they get the empty snapshot the endpoint always returned on errors. A failed
+ * build keeps serving the previous snapshot and is retried by the builder after retry-ms, with any
+ * changes in between folded into that retry, so a struggling database isn't queried per change.
+ */
+@Service
+public class MarketSnapshotService {
+    private static final Logger logger = Logger.getLogger(MarketSnapshotService.class.getName());
+
+    /** A built snapshot: the data version it includes, when it was built, and its JSON. */
+    public record Snapshot(long version, Instant builtAt, byte[] json) {}
+
+    @Value("${market-snapshot.max-age-ms:900000}")
+    private long maxAgeMs;
+
+    @Value("${market-snapshot.retry-ms:30000}")
+    private long retryMs;
+
+    @Autowired
+    private GPUService gpuService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService builder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "market-snapshot-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong dataVersion = new AtomicLong();
+    private final AtomicBoolean buildQueued = new AtomicBoolean();
+    private final Object buildLock = new Object();
+    private final Object versionLock = new Object();
+
+    private volatile Snapshot current;
+    // When the served snapshot first fell behind the data, null while it is up to date
+    private volatile Instant behindSince;
+    private volatile String lastError;
+    // System.nanoTime() before which the builder doesn't try again after a failure; wall time, even in replay
+    private volatile long retryAfterNanos = System.nanoTime();
+
+    private Timer buildTimer;
+
+    @PostConstruct
+    void init() {
+        current = new Snapshot(-1, null, emptySnapshot());
+        buildTimer = Timer.builder("market.snapshot.build")
+            .description("Time taken to recompute the market snapshot")
+            .register(meterRegistry);
+        Gauge.builder("market.snapshot.staleness.seconds", this, service -> service.stalenessSeconds())
+            .description("How long the served market snapshot has been missing committed listing changes")
+            .register(meterRegistry);
+        Gauge.builder("market.snapshot.age.seconds", this, service -> service.ageSeconds())
+            .description("Time since the served market snapshot was built")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        markChanged();
+    }
+
+    /** The snapshot being served, the empty one until the first build succeeds. Never touches the database. */
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * Records that gpu_prices changed. Inside a transaction the rebuild waits for the commit, so it
+     * never reads data that could still roll back, and nothing happens if it does.
+     */
+    public void markChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    changed();
+                }
+            });
+        } else {
+            changed();
+        }
+    }
+
+    /** Rebuilds right away on the caller's thread, for the admin refresh. */
+    public Map<String, Object> refresh() {
+        build(dataVersion.get());
+        return describe();
+    }
+
+    @Scheduled(fixedDelayString = "${market-snapshot.age-check-interval-ms:60000}")
+    public void refreshScheduled() {
+        Instant builtAt = current.builtAt();
+        if (builtAt == null || Duration.between(builtAt, clock.instant()).toMillis() >= maxAgeMs) queueBuild();
+    }
+
+    public Map<String, Object> describe() {
+        Snapshot snapshot = current;
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("version", snapshot.version());
+        state.put("data_version", dataVersion.get());
+        state.put("built_at", snapshot.builtAt());
+        state.put("age_seconds", ageSeconds());
+        state.put("staleness_seconds", stalenessSeconds());
+        state.put("bytes", snapshot.json().length);
+        state.put("last_error", lastError);
+        return state;
+    }
+
+    @PreDestroy
+    public void stop() {
+        builder.shutdownNow();
+        try {
+            builder.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void changed() {
+        synchronized (versionLock) {
+            dataVersion.incrementAndGet();
+            if (behindSince == null) behindSince = clock.instant();
+        }
+        queueBuild();
+    }
+
+    // At most one build waits in the queue, a retry included; it picks up every change made before it starts
+    private void queueBuild() {
+        if (!buildQueued.compareAndSet(false, true)) return;
+        try {
+            builder.schedule(this::runQueuedBuild, cooldownLeftMs(), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            buildQueued.set(false);
+            logger.warning("Could not queue a market snapshot build: " + e.getMessage());
+        }
+    }
+
+    // A build queued before the previous one failed still waits out the cooldown
+    private void runQueuedBuild() {
+        long waitMs = cooldownLeftMs();
+        if (waitMs > 0) {
+            builder.schedule(this::runQueuedBuild, waitMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        buildQueued.set(false);
+        if (!build(dataVersion.get())) queueBuild();
+    }
+
+    private long cooldownLeftMs() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(retryAfterNanos - System.nanoTime()));
+    }
+
+    /** Whether the served snapshot now includes the given version. */
+    private boolean build(long version) {
+        synchronized (buildLock) {
+            if (current.version() > version) return true;
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                byte[] json = objectMapper.writeValueAsBytes(gpuService.computeMarketSnapshot());
+                current = new Snapshot(version, clock.instant(), json);
+                lastError = null;
+                retryAfterNanos = System.nanoTime();
+                synchronized (versionLock) {
+                    if (dataVersion.get() == version) behindSince = null;
+                }
+                return true;
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                retryAfterNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryMs);
+                logger.warning("Could not build the market snapshot, still serving version " + current.version()
+                    + ", retrying in " + retryMs + " ms: " + e.getMessage());
+                return false;
+            } finally {
+                sample.stop(buildTimer);
+            }
+        }
+    }
+
+    private double stalenessSeconds() {
+        Instant since = behindSince;
+        return since == null ? 0 : Math.max(0, Duration.between(since, clock.instant()).toMillis() / 1000.0);
+    }
+
+    private double ageSeconds() {
+        Instant builtAt = current.builtAt();
+        return builtAt == null ? Double.NaN : Duration.between(builtAt, clock.instant()).toMillis() / 1000.0;
+    }
+
+    // What the endpoint returned when the queries failed, served until the first build succeeds
+    private byte[] emptySnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("hot_gpus", new ArrayList<>());
+        snapshot.put("avg_score_week", 0.0);
+        snapshot.put("avg_score_month", 0.0);
+        snapshot.put("score_trend", "Error calculating market trends");
+        snapshot.put("best_deals", new ArrayList<>());
+        try {
+            return objectMapper.writeValueAsBytes(snapshot);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
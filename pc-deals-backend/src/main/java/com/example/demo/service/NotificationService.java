@@ -1,12 +1,15 @@
 package com.example.demo.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import com.example.demo.model.GPU;
 import com.example.demo.model.UserNotificationPreference;
 import com.example.demo.repository.UserNotificationPreferenceRepository;
 import com.example.demo.repository.UserRepository;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.logging.Logger;
 
 @Service
@@ -22,6 +25,10 @@ public class NotificationService {
     @Autowired
     private EmailService emailService;
 
+    // Off in the replay profile so recorded listings never email real users
+    @Value("${notifications.price-alerts.enabled:true}")
+    private boolean priceAlertsEnabled;
+
     public void checkForPriceAlerts(GPU newGPU) {
         // Get all users who want notifications for this GPU model
         List<UserNotificationPreference> preferences = 
@@ -38,6 +45,30 @@ public class NotificationService {
         }
     }
 
+    /**
+     * Batch variant used by the ingestion writer: one preference lookup per model in the batch
+     * instead of one per listing.
+     */
+    public void checkForPriceAlerts(List<GPU> newGPUs) {
+        if (!priceAlertsEnabled) return;
+        Map<String, List<GPU>> byModel = newGPUs.stream().collect(Collectors.groupingBy(GPU::getModel));
+        for (Map.Entry<String, List<GPU>> group : byModel.entrySet()) {
+            int lowestPrice = group.getValue().stream().mapToInt(GPU::getPrice).min().orElse(Integer.MAX_VALUE);
+            List<UserNotificationPreference> preferences =
+                userNotificationPreferenceRepository.findByGpuModelAndPriceThresholdGreaterThan(group.getKey(), lowestPrice);
+            if (preferences.isEmpty()) continue;
+
+            for (GPU gpu : group.getValue()) {
+                for (UserNotificationPreference preference : preferences) {
+                    // Same rule as the single-listing check: threshold strictly above the price
+                    if (gpu.getPrice() < preference.getPriceThreshold()) {
+                        sendNotification(preference, gpu);
+                    }
+                }
+            }
+        }
+    }
+
     private void sendNotification(UserNotificationPreference preference, GPU gpu) {
         try {
             // Get user's email
@@ -0,0 +1,524 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Outlier purges as background jobs in outlier_purge_jobs. A job goes through the models in name
+ * order. For each it works out the model's price band once (see {@link GPUService.OutlierBand}),
+ * then moves the listings outside it to gpu_prices_quarantine chunk-size rows at a time, each chunk
+ * in its own short transaction together with the rebuild of the price candles it touched. Rows a
+ * writer has locked are skipped rather than waited for, and the runner pauses between chunks, so
+ * ingestion is never held up for long. A model is only done once no listing outside its band is
+ * left, so skipped rows are picked up by a later chunk. Price stats are reseeded once the job ends.
+ *
+ * A job's progress is stored after every chunk, so one interrupted by a restart continues with the
+ * same model and band. Restoring a job moves its quarantined rows back; a row whose post and model
+ * were saved again in the meantime stays in quarantine and is counted as a conflict. Jobs and
+ * restores share one runner thread and run in the order they were asked for.
+ */
+@Service
+public class OutlierPurgeService {
+    private static final Logger logger = Logger.getLogger(OutlierPurgeService.class.getName());
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED, RESTORING, RESTORED }
+
+    private record Job(long id, Status status, GPUService.OutlierBand band, double threshold,
+                       String lastModelDone, String currentModel, Double currentLow, Double currentHigh) {}
+
+    private record Bounds(double low, double high) {}
+
+    private static final String COLUMNS =
+        "id, model, price, reddit_url, reddit_posted_at, reddit_post_id, deal_score, repost_of, " +
+        "listing_status, sold_at, removed_at, status_checked_at";
+
+    private static final String MOVE_CHUNK =
+        "WITH moved AS (" +
+        "DELETE FROM gpu_prices WHERE id IN (" +
+        "SELECT id FROM gpu_prices WHERE model = ? AND price IS NOT NULL AND (price < ? OR price > ?) " +
+        "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+        "RETURNING " + COLUMNS + ") " +
+        "INSERT INTO gpu_prices_quarantine (" + COLUMNS + ", purge_job_id, low_price_bound, high_price_bound) " +
+        "SELECT " + COLUMNS + ", ?, ?, ? FROM moved " +
+        "RETURNING model, reddit_posted_at";
+
+    private static final String RESTORE_CHUNK =
+        "WITH restored AS (" +
+        "INSERT INTO gpu_prices (" + COLUMNS + ") " +
+        "SELECT " + COLUMNS + " FROM gpu_prices_quarantine WHERE purge_job_id = ? AND id = ANY(?) " +
+        "ON CONFLICT DO NOTHING RETURNING id, model, reddit_posted_at), " +
+        "gone AS (DELETE FROM gpu_prices_quarantine WHERE id IN (SELECT id FROM restored)) " +
+        "SELECT model, reddit_posted_at FROM restored";
+
+    @Value("${gpu.outlier-purge.chunk-size:500}")
+    private int chunkSize;
+
+    // Pause between chunks, leaving the table to ingestion
+    @Value("${gpu.outlier-purge.pause-ms:200}")
+    private long pauseMs;
+
+    @Value("${gpu.outlier-purge.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PriceCandleService priceCandleService;
+
+    @Autowired
+    private PriceStatsService priceStatsService;
+
+    @Autowired
+    private MarketSnapshotService marketSnapshotService;
+
+    @Autowired
+    private Clock clock;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outlier-purge-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Long> cancelRequested = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopping;
+    private TransactionTemplate transaction;
+
+    // Throughput of the job the runner is on, since it was (re)started in this process
+    private volatile Long activeJobId;
+    private volatile Instant activeSince;
+    private final AtomicInteger activeChunks = new AtomicInteger();
+    private final AtomicInteger activeRows = new AtomicInteger();
+
+    @PostConstruct
+    void init() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /** Creates a purge and queues it behind any running job. */
+    public Map<String, Object> start(GPUService.OutlierBand band, double threshold) {
+        if (band == GPUService.OutlierBand.MEAN && threshold <= 1) {
+            throw new IllegalArgumentException("A mean band needs a threshold above 1");
+        }
+        if (band == GPUService.OutlierBand.MAD && threshold <= 0) {
+            throw new IllegalArgumentException("A MAD band needs a positive k");
+        }
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO outlier_purge_jobs (status, band, threshold) VALUES (?, ?, ?)",
+                new String[] { "id" });
+            statement.setString(1, Status.QUEUED.name());
+            statement.setString(2, band.name());
+            statement.setDouble(3, threshold);
+            return statement;
+        }, keys);
+        long id = keys.getKey().longValue();
+        logger.info("Queued outlier purge " + id + " (" + band + " band, threshold " + threshold + ")");
+        runner.submit(() -> run(id));
+        return status(id);
+    }
+
+    /** The job the runner is on stops after its current chunk; a queued one is cancelled right away. */
+    public Map<String, Object> cancel(long id) {
+        Long active = activeJobId;
+        if (active != null && active == id) {
+            cancelRequested.add(id);
+        } else {
+            jdbcTemplate.update(
+                "UPDATE outlier_purge_jobs SET status = ?, finished_at = NOW(), updated_at = NOW() " +
+                "WHERE id = ? AND status IN (?, ?)",
+                Status.CANCELLED.name(), id, Status.QUEUED.name(), Status.RUNNING.name());
+        }
+        return status(id);
+    }
+
+    /**
+     * Queues moving a finished, failed or cancelled job's quarantined rows back into gpu_prices.
+     * A restored job with conflicts left can be restored again once they are cleared.
+     */
+    public Map<String, Object> restore(long id) {
+        int updated = jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET status = ?, restore_started_at = NULL, restored_at = NULL, updated_at = NOW() " +
+            "WHERE id = ? AND status IN (?, ?, ?, ?)",
+            Status.RESTORING.name(), id,
+            Status.COMPLETED.name(), Status.FAILED.name(), Status.CANCELLED.name(), Status.RESTORED.name());
+        if (updated > 0) runner.submit(() -> runRestore(id));
+        return status(id);
+    }
+
+    public List<Map<String, Object>> recent(int limit) {
+        return jdbcTemplate.queryForList("SELECT * FROM outlier_purge_jobs ORDER BY id DESC LIMIT ?", limit).stream()
+            .map(this::describe)
+            .toList();
+    }
+
+    public Map<String, Object> status(long id) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT * FROM outlier_purge_jobs WHERE id = ?", id);
+        return rows.isEmpty() ? null : describe(rows.get(0));
+    }
+
+    /** Purges and restores left unfinished by the previous process continue after their last chunk. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        if (!resumeOnStartup) return;
+        List<Map<String, Object>> jobs = jdbcTemplate.queryForList(
+            "SELECT id, status FROM outlier_purge_jobs WHERE status IN (?, ?, ?) ORDER BY id",
+            Status.RUNNING.name(), Status.QUEUED.name(), Status.RESTORING.name());
+        for (Map<String, Object> job : jobs) {
+            long id = ((Number) job.get("id")).longValue();
+            logger.info("Resuming outlier purge " + id);
+            if (Status.RESTORING.name().equals(job.get("status"))) {
+                runner.submit(() -> runRestore(id));
+            } else {
+                runner.submit(() -> run(id));
+            }
+        }
+    }
+
+    /** Stops after the current chunk, leaving the job as it is so the next start resumes it. */
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        runner.shutdown();
+        try {
+            if (!runner.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Outlier purge runner did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(long id) {
+        Job job = load(id);
+        if (job == null || (job.status() != Status.QUEUED && job.status() != Status.RUNNING)) return;
+        if (stopping) return;
+
+        jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET status = ?, started_at = COALESCE(started_at, NOW()), " +
+            "models_total = COALESCE(models_total, (SELECT COUNT(DISTINCT model) FROM gpu_prices WHERE price IS NOT NULL)), " +
+            "updated_at = NOW() WHERE id = ?",
+            Status.RUNNING.name(), id);
+        startActive(id);
+
+        Status outcome = Status.COMPLETED;
+        String error = null;
+        try {
+            // The model a previous run was in the middle of keeps the band it started with
+            String after = job.currentModel() != null ? job.currentModel() : job.lastModelDone();
+            if (job.currentModel() != null && job.currentLow() != null && job.currentHigh() != null) {
+                outcome = purgeModel(job, job.currentModel(), new Bounds(job.currentLow(), job.currentHigh()));
+            }
+            List<String> models = outcome != Status.COMPLETED ? List.of() : jdbcTemplate.queryForList(
+                "SELECT DISTINCT model FROM gpu_prices WHERE price IS NOT NULL AND (?::varchar IS NULL OR model > ?) ORDER BY model",
+                String.class, after, after);
+            for (String model : models) {
+                Bounds bounds = bounds(job.band(), job.threshold(), model);
+                outcome = purgeModel(job, model, bounds);
+                if (outcome != Status.COMPLETED) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = Status.RUNNING;
+        } catch (Exception e) {
+            logger.warning("Outlier purge " + id + " failed: " + e.getMessage());
+            outcome = Status.FAILED;
+            error = e.getMessage();
+        } finally {
+            activeJobId = null;
+        }
+
+        if (outcome == Status.RUNNING) {
+            logger.info("Outlier purge " + id + " paused, resumes on next start");
+            return;
+        }
+        if (activeRows.get() > 0) reseedStats();
+        jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET status = ?, last_error = ?, finished_at = NOW(), updated_at = NOW() WHERE id = ?",
+            outcome.name(), error, id);
+        logger.info("Outlier purge " + id + " " + outcome.name().toLowerCase() + ": " + activeRows.get() + " listings quarantined");
+    }
+
+    /**
+     * Moves one model's listings outside the bounds to quarantine, chunk by chunk. Returns COMPLETED
+     * once none are left, CANCELLED or RUNNING (shutting down) if it stopped early. A short chunk
+     * doesn't mean the model is done, since SKIP LOCKED leaves out rows a writer holds; those are
+     * retried after the pause until a plain check finds none left.
+     */
+    private Status purgeModel(Job job, String model, Bounds bounds) throws InterruptedException {
+        long id = job.id();
+        if (bounds == null) {
+            // No prices, or a MAD band with every listing at the same price: nothing is an outlier
+            finishModel(id, model);
+            return Status.COMPLETED;
+        }
+        jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET current_model = ?, current_low = ?, current_high = ?, updated_at = NOW() WHERE id = ?",
+            model, bounds.low(), bounds.high(), id);
+        while (true) {
+            if (stopping) return Status.RUNNING;
+            if (cancelRequested.remove(id)) return Status.CANCELLED;
+
+            Integer moved = transaction.execute(status -> {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(MOVE_CHUNK,
+                    model, bounds.low(), bounds.high(), chunkSize, id, bounds.low(), bounds.high());
+                if (rows.isEmpty()) return 0;
+                priceCandleService.rebuildFor(rows);
+                marketSnapshotService.markChanged();
+                jdbcTemplate.update(
+                    "UPDATE outlier_purge_jobs SET rows_quarantined = rows_quarantined + ?, updated_at = NOW() WHERE id = ?",
+                    rows.size(), id);
+                return rows.size();
+            });
+            if (moved != null && moved > 0) {
+                activeChunks.incrementAndGet();
+                activeRows.addAndGet(moved);
+            }
+            if ((moved == null || moved < chunkSize) && !outliersLeft(model, bounds)) break;
+            Thread.sleep(pauseMs);
+        }
+        finishModel(id, model);
+        return Status.COMPLETED;
+    }
+
+    // Without SKIP LOCKED, so rows other transactions hold still count (a plain read doesn't wait on them)
+    private boolean outliersLeft(String model, Bounds bounds) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM gpu_prices WHERE model = ? AND price IS NOT NULL AND (price < ? OR price > ?))",
+            Boolean.class, model, bounds.low(), bounds.high()));
+    }
+
+    private void finishModel(long id, String model) {
+        jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET models_done = models_done + 1, last_model_done = ?, " +
+            "current_model = NULL, current_low = NULL, current_high = NULL, updated_at = NOW() WHERE id = ?",
+            model, id);
+    }
+
+    /** The model's price band, or null when it has no prices or (for MAD) no spread. */
+    private Bounds bounds(GPUService.OutlierBand band, double threshold, String model) {
+        if (band == GPUService.OutlierBand.MEAN) {
+            Double average = jdbcTemplate.queryForObject(
+                "SELECT AVG(price) FROM gpu_prices WHERE model = ? AND price IS NOT NULL", Double.class, model);
+            if (average == null || average <= 0) return null;
+            return new Bounds(average / threshold, average * threshold);
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("""
+            WITH m AS (
+                SELECT PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY price) AS median_price
+                FROM gpu_prices
+                WHERE model = ? AND price IS NOT NULL
+            )
+            SELECT m.median_price, PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY ABS(g.price - m.median_price)) AS mad
+            FROM gpu_prices g, m
+            WHERE g.model = ? AND g.price IS NOT NULL
+            GROUP BY m.median_price
+            """, model, model);
+        if (rows.isEmpty() || rows.get(0).get("mad") == null) return null;
+        double median = ((Number) rows.get(0).get("median_price")).doubleValue();
+        double mad = ((Number) rows.get(0).get("mad")).doubleValue();
+        if (mad <= 0) return null;
+        double reach = threshold * 1.4826 * mad;
+        return new Bounds(median - reach, median + reach);
+    }
+
+    private void runRestore(long id) {
+        Job job = load(id);
+        if (job == null || job.status() != Status.RESTORING || stopping) return;
+
+        jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET restore_started_at = COALESCE(restore_started_at, NOW()), updated_at = NOW() WHERE id = ?",
+            id);
+        startActive(id);
+
+        long lastId = 0;
+        boolean finished = false;
+        try {
+            while (!stopping) {
+                List<Long> ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM gpu_prices_quarantine WHERE purge_job_id = ? AND id > ? ORDER BY id LIMIT ?",
+                    Long.class, id, lastId, chunkSize);
+                if (ids.isEmpty()) {
+                    finished = true;
+                    break;
+                }
+                lastId = ids.get(ids.size() - 1);
+                Integer restored = transaction.execute(status -> {
+                    List<Map<String, Object>> rows = jdbcTemplate.query(connection -> {
+                        PreparedStatement statement = connection.prepareStatement(RESTORE_CHUNK);
+                        statement.setLong(1, id);
+                        statement.setArray(2, connection.createArrayOf("bigint", ids.toArray()));
+                        return statement;
+                    }, new ColumnMapRowMapper());
+                    if (rows.isEmpty()) return 0;
+                    priceCandleService.rebuildFor(rows);
+                    marketSnapshotService.markChanged();
+                    jdbcTemplate.update(
+                        "UPDATE outlier_purge_jobs SET rows_restored = rows_restored + ?, updated_at = NOW() WHERE id = ?",
+                        rows.size(), id);
+                    return rows.size();
+                });
+                activeChunks.incrementAndGet();
+                activeRows.addAndGet(restored == null ? 0 : restored);
+                Thread.sleep(pauseMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warning("Restoring outlier purge " + id + " failed: " + e.getMessage());
+            if (activeRows.get() > 0) reseedStats();
+            // Back to a state a restore can be asked for again
+            jdbcTemplate.update(
+                "UPDATE outlier_purge_jobs SET status = ?, last_error = ?, updated_at = NOW() WHERE id = ?",
+                Status.FAILED.name(), "Restore failed: " + e.getMessage(), id);
+            return;
+        } finally {
+            activeJobId = null;
+        }
+
+        if (!finished) {
+            logger.info("Restoring outlier purge " + id + " paused, resumes on next start");
+            return;
+        }
+        if (activeRows.get() > 0) reseedStats();
+        // Whatever is left of the job in quarantine couldn't go back
+        jdbcTemplate.update(
+            "UPDATE outlier_purge_jobs SET status = ?, " +
+            "restore_conflicts = (SELECT COUNT(*) FROM gpu_prices_quarantine WHERE purge_job_id = ?), " +
+            "restored_at = NOW(), updated_at = NOW() WHERE id = ?",
+            Status.RESTORED.name(), id, id);
+        logger.info("Outlier purge " + id + " restored: " + activeRows.get() + " listings moved back");
+    }
+
+    private void startActive(long id) {
+        activeJobId = id;
+        activeSince = clock.instant();
+        activeChunks.set(0);
+        activeRows.set(0);
+    }
+
+    private void reseedStats() {
+        try {
+            priceStatsService.reseed();
+        } catch (Exception e) {
+            logger.warning("Could not reseed price stats after outlier purge: " + e.getMessage());
+        }
+    }
+
+    private Job load(long id) {
+        List<Job> jobs = jdbcTemplate.query(
+            "SELECT id, status, band, threshold, last_model_done, current_model, current_low, current_high " +
+            "FROM outlier_purge_jobs WHERE id = ?",
+            (rs, rowNum) -> new Job(
+                rs.getLong("id"),
+                Status.valueOf(rs.getString("status")),
+                GPUService.OutlierBand.valueOf(rs.getString("band")),
+                rs.getDouble("threshold"),
+                rs.getString("last_model_done"),
+                rs.getString("current_model"),
+                rs.getObject("current_low", Double.class),
+                rs.getObject("current_high", Double.class)),
+            id);
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    private Map<String, Object> describe(Map<String, Object> row) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        long id = ((Number) row.get("id")).longValue();
+        Integer modelsTotal = row.get("models_total") == null ? null : ((Number) row.get("models_total")).intValue();
+        int modelsDone = ((Number) row.get("models_done")).intValue();
+        int quarantined = ((Number) row.get("rows_quarantined")).intValue();
+        int restored = ((Number) row.get("rows_restored")).intValue();
+
+        status.put("id", id);
+        status.put("status", row.get("status"));
+        status.put("band", row.get("band"));
+        status.put("threshold", row.get("threshold"));
+        status.put("models_total", modelsTotal);
+        status.put("models_done", modelsDone);
+        if (row.get("current_model") != null) {
+            Map<String, Object> current = new LinkedHashMap<>();
+            current.put("model", row.get("current_model"));
+            current.put("low_price", row.get("current_low"));
+            current.put("high_price", row.get("current_high"));
+            status.put("current_model", current);
+        }
+        status.put("rows_quarantined", quarantined);
+        status.put("rows_restored", restored);
+        status.put("restore_conflicts", row.get("restore_conflicts"));
+
+        // Share of the job done: models purged, or quarantined rows moved back while restoring
+        Double progress = modelsTotal == null ? null : Math.min(1.0, modelsDone / (double) Math.max(1, modelsTotal));
+        if ("COMPLETED".equals(row.get("status"))) progress = 1.0;
+        if ("RESTORING".equals(row.get("status")) || "RESTORED".equals(row.get("status"))) {
+            progress = "RESTORED".equals(row.get("status")) ? 1.0 : Math.min(1.0, restored / (double) Math.max(1, quarantined));
+        }
+        status.put("progress", progress == null ? null : Math.round(progress * 1000) / 1000.0);
+
+        Timestamp startedAt = (Timestamp) row.get("started_at");
+        Timestamp finishedAt = (Timestamp) row.get("finished_at");
+        Timestamp restoreStartedAt = (Timestamp) row.get("restore_started_at");
+        Timestamp restoredAt = (Timestamp) row.get("restored_at");
+        status.put("created_at", row.get("created_at"));
+        status.put("started_at", startedAt);
+        status.put("finished_at", finishedAt);
+        if (startedAt != null && finishedAt != null) {
+            double seconds = seconds(startedAt, finishedAt);
+            status.put("elapsed_seconds", seconds);
+            status.put("rows_per_second", quarantined / seconds);
+        }
+        if (restoreStartedAt != null) {
+            status.put("restore_started_at", restoreStartedAt);
+            status.put("restored_at", restoredAt);
+        }
+        if (restoreStartedAt != null && restoredAt != null) {
+            status.put("restore_rows_per_second", restored / seconds(restoreStartedAt, restoredAt));
+        }
+        Long active = activeJobId;
+        if (active != null && active == id) {
+            double seconds = Math.max(0.001, Duration.between(activeSince, clock.instant()).toMillis() / 1000.0);
+            Map<String, Object> current = new LinkedHashMap<>();
+            current.put("running_seconds", seconds);
+            current.put("chunks", activeChunks.get());
+            current.put("rows_per_second", activeRows.get() / seconds);
+            status.put("current_run", current);
+        }
+        status.put("last_error", row.get("last_error"));
+        return status;
+    }
+
+    private static double seconds(Timestamp from, Timestamp to) {
+        return Math.max(0.001, Duration.between(from.toInstant(), to.toInstant()).toMillis() / 1000.0);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GPU;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Keeps gpu_price_candles (daily open/high/low/close per model) in step with gpu_prices, so price
+ * history reads one row per day instead of aggregating a model's whole history.
+ *
+ * Inserted listings are folded into their candles with one upsert per batch. Merging is
+ * commutative (min, max, sums, earliest open, latest close), so concurrent writers can't lose
+ * each other's rows. Deletions can't be folded out, so the affected candles are recomputed from
+ * gpu_prices instead.
+ */
+@Service
+public class PriceCandleService {
+    private static final Logger logger = Logger.getLogger(PriceCandleService.class.getName());
+
+    public record CandleKey(String model, LocalDate day) {}
+
+    private static final String COLUMNS =
+        "model, day, low_price, high_price, price_sum, listings, open_price, open_at, open_id, close_price, close_at, close_id";
+
+    // Candles of the original listings matching the condition, one per (model, day)
+    private static final String AGGREGATE = """
+        SELECT model, reddit_posted_at::date, MIN(price), MAX(price), SUM(price), COUNT(*),
+               (ARRAY_AGG(price ORDER BY reddit_posted_at, id))[1], MIN(reddit_posted_at), (ARRAY_AGG(id ORDER BY reddit_posted_at, id))[1],
+               (ARRAY_AGG(price ORDER BY reddit_posted_at DESC, id DESC))[1], MAX(reddit_posted_at), (ARRAY_AGG(id ORDER BY reddit_posted_at DESC, id DESC))[1]
+        FROM gpu_prices
+        WHERE repost_of IS NULL AND price IS NOT NULL AND reddit_posted_at IS NOT NULL AND %s
+        GROUP BY model, reddit_posted_at::date
+        """;
+
+    private static final String KEYS = "(model, reddit_posted_at::date) IN (SELECT * FROM UNNEST(?::varchar[], ?::date[]))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** Folds freshly inserted listings (with their generated ids) into their candles. */
+    public void record(List<GPU> inserted) {
+        Long[] ids = inserted.stream()
+            .filter(gpu -> gpu.getId() != null && gpu.getRepostOf() == null && gpu.getPrice() != null)
+            .map(GPU::getId)
+            .toArray(Long[]::new);
+        if (ids.length == 0) return;
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO gpu_price_candles AS c (" + COLUMNS + ") " + AGGREGATE.formatted("id = ANY(?)") +
+                "ON CONFLICT (model, day) DO UPDATE SET " +
+                "low_price = LEAST(c.low_price, EXCLUDED.low_price), " +
+                "high_price = GREATEST(c.high_price, EXCLUDED.high_price), " +
+                "price_sum = c.price_sum + EXCLUDED.price_sum, " +
+                "listings = c.listings + EXCLUDED.listings, " +
+                "open_price = CASE WHEN (EXCLUDED.open_at, EXCLUDED.open_id) < (c.open_at, c.open_id) THEN EXCLUDED.open_price ELSE c.open_price END, " +
+                "open_id = CASE WHEN (EXCLUDED.open_at, EXCLUDED.open_id) < (c.open_at, c.open_id) THEN EXCLUDED.open_id ELSE c.open_id END, " +
+                "open_at = LEAST(c.open_at, EXCLUDED.open_at), " +
+                "close_price = CASE WHEN (EXCLUDED.close_at, EXCLUDED.close_id) > (c.close_at, c.close_id) THEN EXCLUDED.close_price ELSE c.close_price END, " +
+                "close_id = CASE WHEN (EXCLUDED.close_at, EXCLUDED.close_id) > (c.close_at, c.close_id) THEN EXCLUDED.close_id ELSE c.close_id END, " +
+                "close_at = GREATEST(c.close_at, EXCLUDED.close_at)");
+            statement.setArray(1, connection.createArrayOf("bigint", ids));
+            return statement;
+        });
+    }
+
+    /**
+     * Recomputes the given candles from gpu_prices, after listings in them were deleted or
+     * changed. Candles with nothing left are removed.
+     */
+    public void rebuild(List<CandleKey> keys) {
+        if (keys.isEmpty()) return;
+        Object[] models = keys.stream().map(CandleKey::model).toArray();
+        Object[] days = keys.stream().map(key -> Date.valueOf(key.day())).toArray();
+        // Replace rather than merge: the aggregate already covers every remaining listing of the day
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO gpu_price_candles AS c (" + COLUMNS + ") " + AGGREGATE.formatted(KEYS) +
+                "ON CONFLICT (model, day) DO UPDATE SET " +
+                "low_price = EXCLUDED.low_price, high_price = EXCLUDED.high_price, price_sum = EXCLUDED.price_sum, " +
+                "listings = EXCLUDED.listings, open_price = EXCLUDED.open_price, open_at = EXCLUDED.open_at, " +
+                "open_id = EXCLUDED.open_id, close_price = EXCLUDED.close_price, close_at = EXCLUDED.close_at, " +
+                "close_id = EXCLUDED.close_id");
+            bindKeys(statement, connection.createArrayOf("varchar", models), connection.createArrayOf("date", days));
+            return statement;
+        });
+        int removed = jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM gpu_price_candles c WHERE (c.model, c.day) IN (SELECT * FROM UNNEST(?::varchar[], ?::date[])) " +
+                "AND NOT EXISTS (SELECT 1 FROM gpu_prices g WHERE g.model = c.model AND g.reddit_posted_at::date = c.day " +
+                "AND g.repost_of IS NULL AND g.price IS NOT NULL)");
+            bindKeys(statement, connection.createArrayOf("varchar", models), connection.createArrayOf("date", days));
+            return statement;
+        });
+        logger.info("Rebuilt " + keys.size() + " price candles, " + removed + " left empty and removed");
+    }
+
+    /** Rebuilds the candles of every listing in the given rows (each with model and reddit_posted_at). */
+    public void rebuildFor(List<Map<String, Object>> deletedRows) {
+        rebuild(deletedRows.stream()
+            .filter(row -> row.get("reddit_posted_at") != null)
+            .map(row -> new CandleKey((String) row.get("model"),
+                ((Timestamp) row.get("reddit_posted_at")).toLocalDateTime().toLocalDate()))
+            .distinct()
+            .toList());
+    }
+
+    /** Recomputes the whole table, as the migration that created it did. */
+    public void rebuildAll() {
+        jdbcTemplate.update("TRUNCATE gpu_price_candles");
+        jdbcTemplate.update("INSERT INTO gpu_price_candles (" + COLUMNS + ") " + AGGREGATE.formatted("TRUE"));
+    }
+
+    private static void bindKeys(PreparedStatement statement, Array models, Array days) throws SQLException {
+        statement.setArray(1, models);
+        statement.setArray(2, days);
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GPU;
+import com.example.demo.util.RollingStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Count, average and standard deviation of recent prices per model, kept in memory so price
+ * analysis doesn't hit the database on every keystroke. Each model has a {@link RollingStats}
+ * over window-days in bucket-minutes buckets (hourly by default). Original listings (not reposts)
+ * are added as GPUBatchWriter inserts them, and old buckets fall out of the window by themselves.
+ *
+ * The stats are seeded from gpu_prices at startup and rebuilt after anything deletes listings.
+ * A periodic check compares them with the same aggregates computed in SQL over the same window,
+ * and rebuilds them if any model disagrees. Until the first seed succeeds, {@link #summary}
+ * returns null and callers fall back to SQL.
+ */
+@Service
+public class PriceStatsService {
+    private static final Logger logger = Logger.getLogger(PriceStatsService.class.getName());
+
+    private record Added(long id, String model, long epochSecond, int price) {}
+
+    @Value("${price-stats.enabled:true}")
+    private boolean enabled;
+
+    @Value("${price-stats.window-days:7}")
+    private int windowDays;
+
+    @Value("${price-stats.bucket-minutes:60}")
+    private int bucketMinutes;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Object seedLock = new Object();
+    private volatile Map<String, RollingStats> byModel;
+    // Listings added while a reseed is reading the table, replayed onto the new stats unless the read saw them
+    private List<Added> addedDuringSeed;
+
+    private Counter mismatches;
+
+    @PostConstruct
+    void init() {
+        mismatches = Counter.builder("price.stats.mismatches")
+            .description("Models whose in-memory price stats disagreed with SQL in a consistency check")
+            .register(meterRegistry);
+        if (!enabled) return;
+        try {
+            reseed();
+        } catch (Exception e) {
+            logger.warning("Could not seed price stats, price analysis will query the database: " + e.getMessage());
+        }
+    }
+
+    /** The window's stats for a model (count 0 when it has no recent listings), or null when not seeded. */
+    public RollingStats.Summary summary(String model) {
+        Map<String, RollingStats> current = byModel;
+        if (current == null) return null;
+        RollingStats stats = current.get(model);
+        if (stats == null) return new RollingStats.Summary(0, 0, 0);
+        synchronized (stats) {
+            return stats.summary(clock.instant().getEpochSecond());
+        }
+    }
+
+    public void record(List<GPU> inserted) {
+        if (!enabled) return;
+        long now = clock.instant().getEpochSecond();
+        synchronized (seedLock) {
+            for (GPU gpu : inserted) {
+                if (gpu.getRepostOf() != null || gpu.getPrice() == null || gpu.getRedditPostedAt() == null) continue;
+                Added added = new Added(gpu.getId() == null ? -1 : gpu.getId(), gpu.getModel(),
+                    epochSecond(gpu.getRedditPostedAt()), gpu.getPrice());
+                if (addedDuringSeed != null) addedDuringSeed.add(added);
+                if (byModel != null) add(byModel, added, now);
+            }
+        }
+    }
+
+    /** Rebuilds every model's stats from gpu_prices. */
+    public void reseed() {
+        if (!enabled) return;
+        synchronized (seedLock) {
+            addedDuringSeed = new ArrayList<>();
+        }
+        try {
+            long now = clock.instant().getEpochSecond();
+            Map<String, RollingStats> seeded = new ConcurrentHashMap<>();
+            Set<Long> seen = new HashSet<>();
+            jdbcTemplate.query(
+                "SELECT id, model, price, reddit_posted_at FROM gpu_prices " +
+                "WHERE repost_of IS NULL AND price IS NOT NULL AND reddit_posted_at >= ?",
+                rs -> {
+                    Added added = new Added(rs.getLong(1), rs.getString(2),
+                        epochSecond(rs.getTimestamp(4).toLocalDateTime()), rs.getInt(3));
+                    seen.add(added.id());
+                    add(seeded, added, now);
+                },
+                windowStartTimestamp(now));
+
+            synchronized (seedLock) {
+                long replayAt = clock.instant().getEpochSecond();
+                for (Added added : addedDuringSeed) {
+                    if (!seen.contains(added.id())) add(seeded, added, replayAt);
+                }
+                byModel = seeded;
+            }
+            logger.info("Seeded price stats for " + seeded.size() + " models from " + seen.size() + " listings");
+        } finally {
+            synchronized (seedLock) {
+                addedDuringSeed = null;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${price-stats.check-interval-ms:900000}",
+               initialDelayString = "${price-stats.check-interval-ms:900000}")
+    public void checkScheduled() {
+        if (!enabled) return;
+        try {
+            Map<String, Object> result = check();
+            if (!((List<?>) result.get("mismatches")).isEmpty()) {
+                logger.warning("Price stats disagreed with SQL, reseeding: " + result.get("mismatches"));
+                reseed();
+            }
+        } catch (Exception e) {
+            logger.warning("Price stats consistency check failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares every model's in-memory count, average and standard deviation with SQL over the
+     * same window. Listings saved while the check runs can show up as a one-off mismatch.
+     */
+    public Map<String, Object> check() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (byModel == null) {
+            result.put("seeded", false);
+            result.put("mismatches", List.of());
+            return result;
+        }
+        long now = clock.instant().getEpochSecond();
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+            "SELECT model, COUNT(*) AS count, AVG(price) AS avg_price, STDDEV(price) AS stddev_price FROM gpu_prices " +
+            "WHERE repost_of IS NULL AND price IS NOT NULL AND reddit_posted_at >= ? GROUP BY model",
+            windowStartTimestamp(now));
+
+        List<Map<String, Object>> mismatched = new ArrayList<>();
+        Set<String> models = new HashSet<>(byModel.keySet());
+        for (Map<String, Object> row : rows) {
+            String model = (String) row.get("model");
+            models.remove(model);
+            RollingStats.Summary memory = summary(model);
+            long count = ((Number) row.get("count")).longValue();
+            double avg = ((Number) row.get("avg_price")).doubleValue();
+            Number stddev = (Number) row.get("stddev_price");
+            boolean agrees = memory.count() == count && close(memory.mean(), avg)
+                && (stddev == null ? count < 2 : close(memory.stddev(), stddev.doubleValue()));
+            if (!agrees) mismatched.add(mismatch(model, memory, count, avg, stddev));
+        }
+        // Models the window has in memory but SQL has nothing recent for
+        for (String model : models) {
+            RollingStats.Summary memory = summary(model);
+            if (memory.count() > 0) mismatched.add(mismatch(model, memory, 0, 0, null));
+        }
+        mismatches.increment(mismatched.size());
+
+        result.put("seeded", true);
+        result.put("window_start", Instant.ofEpochSecond(windowStart(now)).toString());
+        result.put("models", rows.size());
+        result.put("mismatches", mismatched);
+        return result;
+    }
+
+    private void add(Map<String, RollingStats> target, Added added, long now) {
+        RollingStats stats = target.computeIfAbsent(added.model(), model -> new RollingStats(buckets(), bucketSeconds()));
+        synchronized (stats) {
+            stats.add(added.epochSecond(), added.price(), now);
+        }
+    }
+
+    private int buckets() {
+        return windowDays * 24 * 60 / bucketMinutes;
+    }
+
+    private long bucketSeconds() {
+        return bucketMinutes * 60L;
+    }
+
+    private long windowStart(long now) {
+        return RollingStats.windowStart(now, buckets(), bucketSeconds());
+    }
+
+    private Timestamp windowStartTimestamp(long now) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(Instant.ofEpochSecond(windowStart(now)), ZoneId.systemDefault()));
+    }
+
+    // reddit_posted_at is stored as local time in the JVM's zone
+    private static long epochSecond(LocalDateTime postedAt) {
+        return postedAt.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static boolean close(double memory, double sql) {
+        return Math.abs(memory - sql) <= 1e-6 * Math.max(1, Math.abs(sql));
+    }
+
+    private static Map<String, Object> mismatch(String model, RollingStats.Summary memory, long count, double avg, Number stddev) {
+        Map<String, Object> mismatch = new LinkedHashMap<>();
+        mismatch.put("model", model);
+        mismatch.put("memory_count", memory.count());
+        mismatch.put("sql_count", count);
+        mismatch.put("memory_avg", memory.mean());
+        mismatch.put("sql_avg", avg);
+        mismatch.put("memory_stddev", memory.count() < 2 ? null : memory.stddev());
+        mismatch.put("sql_stddev", stddev);
+        return mismatch;
+    }
+}
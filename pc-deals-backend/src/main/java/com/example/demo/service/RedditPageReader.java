@@ -0,0 +1,223 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RedditPost;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a Reddit listing page ({@code {"data": {"children": [...], "after": ...}}}) and keeps
+ * only id, title, selftext, url, author, created_utc, link_flair_text and the after cursor. Every other
+ * field (selftext_html, preview, media, awards, ...) is skipped without being materialized, and
+ * once a post's flair is known not to be SELLING/CLOSED its remaining text fields are skipped too.
+ */
+@Component
+public class RedditPageReader {
+
+    /**
+     * {@code newestFullname}/{@code newestCreatedUtc} describe the first child on the page and
+     * {@code oldestCreatedUtc} the last one (Reddit lists newest first), whatever their flair, so
+     * callers can checkpoint past posts the reader filtered out.
+     */
+    public record Page(List<RedditPost> posts, String after, String before, int childCount,
+                       String newestFullname, long newestCreatedUtc, long oldestCreatedUtc) {}
+
+    /**
+     * What the status refresher needs from an /api/info child. {@code removedBy} is Reddit's
+     * removed_by_category (moderator, deleted, reddit, ...), null while the post is up.
+     */
+    public record PostStatus(String id, String flair, String removedBy) {
+        public boolean removed() {
+            return removedBy != null;
+        }
+    }
+
+    private static final class Children {
+        int count;
+        String newestFullname;
+        long newestCreatedUtc;
+        long oldestCreatedUtc;
+    }
+
+    private final JsonFactory jsonFactory;
+
+    public RedditPageReader(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public Page read(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return readListing(parser);
+        }
+    }
+
+    public Page read(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return readListing(parser);
+        }
+    }
+
+    /**
+     * Reads an /api/info listing, keeping only id, link_flair_text and removed_by_category of
+     * every child whatever its flair.
+     */
+    public List<PostStatus> readStatuses(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return readStatuses(parser);
+        }
+    }
+
+    public List<PostStatus> readStatuses(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return readStatuses(parser);
+        }
+    }
+
+    public static boolean isSaleFlair(String flair) {
+        return "SELLING".equalsIgnoreCase(flair) || "CLOSED".equalsIgnoreCase(flair);
+    }
+
+    private Page readListing(JsonParser parser) throws IOException {
+        List<RedditPost> posts = new ArrayList<>();
+        String after = null;
+        String before = null;
+        Children children = new Children();
+
+        if (parser.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected a Reddit listing object");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!"data".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String dataField = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (dataField) {
+                    case "after" -> after = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "before" -> before = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "children" -> readChildren(parser, posts, children);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new Page(posts, after, before, children.count, children.newestFullname, children.newestCreatedUtc,
+            children.oldestCreatedUtc);
+    }
+
+    private void readChildren(JsonParser parser, List<RedditPost> posts, Children children) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            boolean first = children.count++ == 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("data".equals(field)) {
+                    RedditPost post = readPost(parser);
+                    if (first) {
+                        children.newestFullname = post.fullname();
+                        children.newestCreatedUtc = post.createdUtc();
+                    }
+                    children.oldestCreatedUtc = post.createdUtc();
+                    if (isSaleFlair(post.flair())) posts.add(post);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private RedditPost readPost(JsonParser parser) throws IOException {
+        String id = null, title = null, selftext = null, url = null, author = null, flair = null;
+        long createdUtc = 0;
+        boolean wanted = true;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                // id and created_utc are kept for every post so filtered posts can still be checkpointed
+                case "id" -> id = parser.getText();
+                case "created_utc" -> createdUtc = value == JsonToken.VALUE_NULL ? 0 : parser.getValueAsLong();
+                case "title" -> title = wanted ? parser.getText() : null;
+                case "selftext" -> selftext = wanted ? parser.getText() : null;
+                case "url" -> url = wanted ? parser.getText() : null;
+                case "author" -> author = wanted && value != JsonToken.VALUE_NULL ? parser.getText() : null;
+                case "link_flair_text" -> {
+                    flair = value == JsonToken.VALUE_NULL ? "" : parser.getText();
+                    // Text fields after this are skipped for posts we'd throw away anyway
+                    wanted = isSaleFlair(flair);
+                }
+                default -> { }
+            }
+        }
+
+        if (!wanted) return new RedditPost(id, "", "", null, createdUtc, flair, null);
+        return new RedditPost(id, title == null ? "" : title, selftext == null ? "" : selftext, url, createdUtc,
+            flair == null ? "" : flair, author);
+    }
+
+    private List<PostStatus> readStatuses(JsonParser parser) throws IOException {
+        List<PostStatus> statuses = new ArrayList<>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected a Reddit listing object");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!"data".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String dataField = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"children".equals(dataField) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String childField = parser.currentName();
+                        parser.nextToken();
+                        if ("data".equals(childField)) statuses.add(readStatus(parser));
+                        else parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return statuses;
+    }
+
+    private PostStatus readStatus(JsonParser parser) throws IOException {
+        String id = null, flair = "", removedBy = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "id" -> id = parser.getText();
+                case "link_flair_text" -> flair = value == JsonToken.VALUE_NULL ? "" : parser.getText();
+                case "removed_by_category" -> removedBy = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                default -> { }
+            }
+        }
+        return new PostStatus(id, flair, removedBy);
+    }
+}
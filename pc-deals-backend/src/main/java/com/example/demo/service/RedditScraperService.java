@@ -1,49 +1,166 @@
 package com.example.demo.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalTime;
-import java.util.logging.Logger;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Logger;
 
+/**
+ * Polls /r/hardwareswap/new on an interval that follows the post arrival rate. Each run measures
+ * how many posts arrived since the previous one and folds that into a per-hour-of-day moving
+ * average; the next run is scheduled so it should find about target-posts-per-poll new posts,
+ * clamped to [min-interval, max-interval]. Runs schedule their successor when they finish, so two
+ * scrapes never overlap. A failed run is retried with exponential backoff.
+ */
+// Disabled in the replay profile, which drives ingestion itself on a virtual clock
 @Service
+@ConditionalOnProperty(name = "reddit.scraper.enabled", havingValue = "true", matchIfMissing = true)
 public class RedditScraperService {
     private static final Logger logger = Logger.getLogger(RedditScraperService.class.getName());
 
+    @Value("${reddit.scraper.zone:America/Chicago}")
+    private String zone;
+
+    @Value("${reddit.scraper.min-interval-seconds:120}")
+    private long minIntervalSeconds;
+
+    @Value("${reddit.scraper.max-interval-seconds:1800}")
+    private long maxIntervalSeconds;
+
+    @Value("${reddit.scraper.target-posts-per-poll:3}")
+    private double targetPostsPerPoll;
+
+    // Weight of the newest run in the hourly average
+    @Value("${reddit.scraper.ewma-alpha:0.3}")
+    private double alpha;
+
+    @Value("${reddit.scraper.failure-backoff-seconds:30}")
+    private long failureBackoffSeconds;
+
     @Autowired
     private RedditService redditService;
 
-    // Always runs every 5 minutes, but we conditionally skip based on the time. 
-    @Scheduled(fixedRate = 300000) //300,000 = 5 min
-    public void fetchNewListings() {
-        ZonedDateTime now = ZonedDateTime.now(ZoneId.of("America/Chicago"));
-        int currentHour = now.getHour();
-
-        // Active scraping between 9am–10pm every 5 minutes
-        // Outside of those hours, run only every 30 minutes (if minute % 30 == 0)
-        int currentMinute = now.getMinute();
-
-        boolean shouldRunNow =
-            (currentHour >= 9 && currentHour < 24) ||  // 9:00 to 21:59 → every 5 minutes
-            (currentMinute % 30 == 0);                // Other hours → only every 30 minutes
-        System.out.println("Hour: " + currentHour);
-        System.out.println("Minute: " + currentMinute);
-        if (!shouldRunNow) {
-            logger.info("Skipped fetch — outside active hours and not a 30-minute interval");
-            return;
-        }
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private Clock clock;
+
+    // Posts per minute, indexed by hour of day in the scraper's zone
+    private final double[] arrivalRate = new double[24];
+
+    private Instant lastSuccessAt;
+    private Instant lastRunAt;
+    private long lastRunMillis;
+    private int lastNewPosts = -1;
+    private int lastSaved;
+    private int consecutiveFailures;
+    private Duration interval = Duration.ZERO;
+    private Instant nextFireAt;
+    private ScheduledFuture<?> next;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduleAt(clock.instant());
+    }
 
-        Instant start = Instant.now();
+    @PreDestroy
+    public synchronized void stop() {
+        if (next != null) next.cancel(false);
+    }
+
+    public void fetchNewListings() {
+        Instant start = clock.instant();
+        RedditService.NewListingsRun run;
         try {
-            redditService.fetchAndSaveNewListings();
-            Instant end = Instant.now();
-            logger.info(String.format("Scheduled scraping completed in %d ms",
-                end.toEpochMilli() - start.toEpochMilli()));
+            run = redditService.ingestNewListings();
         } catch (Exception e) {
             logger.severe("Error during scheduled scraping: " + e.getMessage());
+            run = new RedditService.NewListingsRun(List.of(), -1, true);
+        }
+        long elapsedMillis = Duration.between(start, clock.instant()).toMillis();
+
+        Duration nextInterval;
+        synchronized (this) {
+            lastRunAt = start;
+            lastRunMillis = elapsedMillis;
+            lastNewPosts = run.newPosts();
+            lastSaved = run.saved().size();
+
+            if (run.failed()) {
+                consecutiveFailures++;
+                long backoff = failureBackoffSeconds << Math.min(consecutiveFailures - 1, 16);
+                nextInterval = Duration.ofSeconds(Math.min(backoff, maxIntervalSeconds));
+            } else {
+                consecutiveFailures = 0;
+                recordArrivals(start, run.newPosts());
+                lastSuccessAt = start;
+                nextInterval = intervalFor(clock.instant());
+            }
+            interval = nextInterval;
+        }
+
+        logger.info(String.format("Scheduled scraping %s in %d ms: %s new posts, %d saved, next run in %ds",
+            run.failed() ? "failed" : "completed", elapsedMillis,
+            run.newPosts() < 0 ? "?" : String.valueOf(run.newPosts()), run.saved().size(), nextInterval.toSeconds()));
+        scheduleAt(clock.instant().plus(nextInterval));
+    }
+
+    public synchronized Map<String, Object> getSchedule() {
+        Map<String, Object> schedule = new LinkedHashMap<>();
+        schedule.put("next_fire_at", nextFireAt);
+        schedule.put("interval_seconds", interval.toSeconds());
+        schedule.put("last_run_at", lastRunAt);
+        schedule.put("last_run_ms", lastRunMillis);
+        schedule.put("last_new_posts", lastNewPosts);
+        schedule.put("last_saved", lastSaved);
+        schedule.put("consecutive_failures", consecutiveFailures);
+        Map<Integer, Double> rates = new LinkedHashMap<>();
+        for (int hour = 0; hour < 24; hour++) rates.put(hour, Math.round(arrivalRate[hour] * 1000) / 1000.0);
+        schedule.put("posts_per_minute_by_hour", rates);
+        return schedule;
+    }
+
+    private synchronized void scheduleAt(Instant fireAt) {
+        nextFireAt = fireAt;
+        next = taskScheduler.schedule(this::fetchNewListings, fireAt);
+    }
+
+    /** Rate measured over the window since the last successful run, credited to the hour it ended in. */
+    private void recordArrivals(Instant now, int newPosts) {
+        if (newPosts < 0 || lastSuccessAt == null) return;
+        double minutes = Duration.between(lastSuccessAt, now).toMillis() / 60000.0;
+        if (minutes <= 0) return;
+        int hour = now.atZone(ZoneId.of(zone)).getHour();
+        arrivalRate[hour] = alpha * (newPosts / minutes) + (1 - alpha) * arrivalRate[hour];
+    }
+
+    private Duration intervalFor(Instant now) {
+        double rate = arrivalRate[now.atZone(ZoneId.of(zone)).getHour()];
+        long seconds = rate <= 0 ? maxIntervalSeconds : Math.round(targetPostsPerPoll / rate * 60);
+        return Duration.ofSeconds(Math.max(minIntervalSeconds, Math.min(maxIntervalSeconds, seconds)));
+    }
+
+    // Until runs say otherwise, assume the old schedule: every 5 minutes from 9am, every 30 overnight
+    @PostConstruct
+    void seedArrivalRates() {
+        for (int hour = 0; hour < 24; hour++) {
+            arrivalRate[hour] = targetPostsPerPoll / (hour >= 9 ? 5.0 : 30.0);
         }
     }
 }
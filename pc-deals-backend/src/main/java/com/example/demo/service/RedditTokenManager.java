@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.*;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Caches the app-only Reddit OAuth token for its lifetime (expires_in, normally an hour) and
+ * refreshes it in the background shortly before it expires. Callers that need a token while a
+ * refresh is running (scheduler plus manual endpoints) all wait on the same request.
+ */
+@Component
+public class RedditTokenManager {
+    private static final Logger logger = Logger.getLogger(RedditTokenManager.class.getName());
+
+    private record Token(String value, Instant expiresAt) {}
+
+    @Value("${reddit.client.id}")
+    private String clientId;
+
+    @Value("${reddit.client.secret}")
+    private String clientSecret;
+
+    @Value("${reddit.auth.url:https://www.reddit.com/api/v1/access_token}")
+    private String authUrl;
+
+    @Value("${reddit.token.refresh-margin-seconds:300}")
+    private long refreshMarginSeconds;
+
+    @Autowired
+    @Qualifier("redditRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile Token current;
+    private CompletableFuture<Token> inFlight;
+
+    /** Returns a valid token, fetching one only if none is cached or it is about to expire. */
+    public String getToken() {
+        Token token = current;
+        if (token != null && Instant.now().isBefore(token.expiresAt().minusSeconds(refreshMarginSeconds))) {
+            return token.value();
+        }
+        return refresh().value();
+    }
+
+    /**
+     * Runs a Reddit call with the cached token. On 401 the token is dropped, a fresh one is
+     * fetched and the call is retried exactly once.
+     */
+    public <T> T withToken(Function<String, T> call) {
+        String token = getToken();
+        try {
+            return call.apply(token);
+        } catch (HttpClientErrorException.Unauthorized e) {
+            logger.warning("Reddit rejected the cached token, refreshing and retrying once");
+            invalidate(token);
+            return call.apply(getToken());
+        }
+    }
+
+    public void invalidate(String token) {
+        Token cached = current;
+        if (cached != null && cached.value().equals(token)) current = null;
+    }
+
+    @Scheduled(fixedDelayString = "${reddit.token.check-interval-ms:60000}")
+    public void refreshIfExpiring() {
+        Token token = current;
+        if (token == null) return; // Nothing has asked for a token yet
+        if (Instant.now().isAfter(token.expiresAt().minusSeconds(refreshMarginSeconds))) {
+            try {
+                refresh();
+            } catch (Exception e) {
+                logger.warning("Background Reddit token refresh failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private Token refresh() {
+        CompletableFuture<Token> request;
+        boolean owner = false;
+        synchronized (this) {
+            if (inFlight == null) {
+                inFlight = new CompletableFuture<>();
+                owner = true;
+            }
+            request = inFlight;
+        }
+
+        if (owner) {
+            try {
+                Token token = requestToken();
+                current = token;
+                request.complete(token);
+            } catch (RuntimeException e) {
+                request.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    inFlight = null;
+                }
+            }
+        }
+        return request.join();
+    }
+
+    private Token requestToken() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBasicAuth(clientId, clientSecret);
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        HttpEntity<String> request = new HttpEntity<>("grant_type=client_credentials", headers);
+        ResponseEntity<String> response = restTemplate.exchange(authUrl, HttpMethod.POST, request, String.class);
+
+        try {
+            JsonNode jsonNode = objectMapper.readTree(response.getBody());
+            long expiresIn = jsonNode.path("expires_in").asLong(3600);
+            logger.info("Fetched new Reddit access token, valid for " + expiresIn + "s");
+            return new Token(jsonNode.get("access_token").asText(), Instant.now().plusSeconds(expiresIn));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read Reddit access token response", e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.demo.service;
+
+import com.example.demo.util.WarpClock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Drives {@link RedditService} against the replay stand-in and reports end-to-end throughput.
+ * "new" mode starts the virtual clock at the oldest recorded post and calls
+ * fetchAndSaveNewListings every scrape interval of virtual time until the newest post has
+ * arrived; "backfill" mode shows every post at once and runs a backfill job to completion.
+ */
+@Service
+@Profile("replay")
+public class ReplayIngestionService {
+    private static final Logger logger = Logger.getLogger(ReplayIngestionService.class.getName());
+
+    private static final List<String> STAGES = List.of("fetch", "filter", "fingerprint", "extract", "validate", "persist", "alert");
+
+    @Value("${replay.scrape-interval-minutes:5}")
+    private long scrapeIntervalMinutes;
+
+    @Value("${replay.run-on-startup:false}")
+    private boolean runOnStartup;
+
+    @Value("${replay.mode:new}")
+    private String defaultMode;
+
+    // Listing target of the backfill-mode job, same as a plain /api/reddit/fetch-save
+    @Value("${reddit.backfill.default-max-listings:275}")
+    private int backfillMaxListings;
+
+    @Autowired
+    private RedditService redditService;
+
+    @Autowired
+    private BackfillJobService backfillJobService;
+
+    @Autowired
+    private ReplayStandInServer standInServer;
+
+    @Autowired
+    private WarpClock clock;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PriceStatsService priceStatsService;
+
+    @Autowired
+    private PriceCandleService priceCandleService;
+
+    @Autowired
+    private MarketSnapshotService marketSnapshotService;
+
+    @Autowired
+    private ExtractionCache extractionCache;
+
+    @Autowired
+    private RepostDetector repostDetector;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void runOnStartup() {
+        if (!runOnStartup) return;
+        logger.info("Replay report: " + run(defaultMode, clock.getWarpFactor(), true));
+    }
+
+    /**
+     * Replays the recorded posts and returns the throughput report. {@code fresh} first forgets
+     * everything an earlier replay left behind (checkpoint, processed IDs, saved listings,
+     * fingerprints and cached extractions for the recorded posts) so the run does the full amount
+     * of work.
+     */
+    public synchronized Map<String, Object> run(String mode, double warpFactor, boolean fresh) {
+        if (fresh) forgetPreviousReplay();
+        Map<String, Double> before = snapshot();
+
+        long wallStart = System.nanoTime();
+        Instant virtualStart = Instant.ofEpochSecond(standInServer.oldestCreatedUtc());
+        Instant virtualEnd = Instant.ofEpochSecond(standInServer.newestCreatedUtc());
+        int scrapes = 0;
+
+        if ("backfill".equals(mode)) {
+            clock.setWarpFactor(0);
+            clock.jumpTo(virtualEnd);
+            Map<String, Object> job = backfillJobService.start(null, null, backfillMaxListings);
+            try {
+                backfillJobService.awaitFinished(((Number) job.get("id")).longValue(), Duration.ofHours(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scrapes++;
+        } else {
+            Duration interval = Duration.ofMinutes(scrapeIntervalMinutes);
+            clock.setWarpFactor(warpFactor);
+            clock.jumpTo(virtualStart);
+            while (true) {
+                boolean lastScrape = clock.instant().isAfter(virtualEnd);
+                redditService.fetchAndSaveNewListings();
+                scrapes++;
+                if (lastScrape) break;
+
+                // Frozen clock: step it ourselves, as fast as ingestion allows
+                if (warpFactor <= 0) {
+                    clock.jumpTo(clock.instant().plus(interval));
+                    continue;
+                }
+                try {
+                    Thread.sleep(clock.realDuration(interval).toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+        Map<String, Double> after = snapshot();
+        double postsRead = delta(before, after, "posts.read");
+        double postsEvaluated = delta(before, after, "posts.evaluated");
+        double listingsSaved = delta(before, after, "listings.saved");
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode);
+        report.put("warp_factor", warpFactor);
+        report.put("scrapes", scrapes);
+        report.put("recorded_posts", standInServer.postIds().size());
+        report.put("virtual_hours", Duration.between(virtualStart, virtualEnd).toMinutes() / 60.0);
+        report.put("wall_seconds", wallSeconds);
+        report.put("posts_read", (long) postsRead);
+        report.put("posts_evaluated", (long) postsEvaluated);
+        report.put("listings_saved", (long) listingsSaved);
+        report.put("posts_per_second", postsRead / wallSeconds);
+        report.put("listings_saved_per_second", listingsSaved / wallSeconds);
+        report.put("openai_requests", (long) delta(before, after, "openai.requests"));
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (String stage : STAGES) {
+            double count = delta(before, after, stage + ".count");
+            double totalMs = delta(before, after, stage + ".ms");
+            stages.put(stage, Map.of(
+                "pages", (long) count,
+                "total_ms", totalMs,
+                "mean_ms", count == 0 ? 0.0 : totalMs / count,
+                "share_of_wall", totalMs / 1000 / wallSeconds));
+        }
+        report.put("stages", stages);
+        return report;
+    }
+
+    private void forgetPreviousReplay() {
+        List<String> ids = standInServer.postIds();
+        jdbcTemplate.update("DELETE FROM ingestion_checkpoint WHERE source = ?", RedditService.CHECKPOINT_SOURCE);
+        deleteForPosts("DELETE FROM ingestion_processed_posts WHERE reddit_post_id = ANY(?)", ids);
+        deleteForPosts("DELETE FROM gpu_prices WHERE reddit_post_id = ANY(?)", ids);
+        deleteForPosts("DELETE FROM gpu_prices_quarantine WHERE reddit_post_id = ANY(?)", ids);
+        deleteForPosts("DELETE FROM extraction_training_posts WHERE reddit_post_id = ANY(?)", ids);
+        repostDetector.forget(ids);
+        extractionCache.invalidateAll();
+        priceCandleService.rebuildAll();
+        priceStatsService.reseed();
+        marketSnapshotService.markChanged();
+    }
+
+    private void deleteForPosts(String sql, List<String> ids) {
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            Array array = connection.createArrayOf("varchar", ids.toArray());
+            statement.setArray(1, array);
+            return statement;
+        });
+    }
+
+    private Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("posts.read", count("ingestion.posts.read"));
+        values.put("posts.evaluated", count("ingestion.posts.evaluated"));
+        values.put("listings.saved", count("ingestion.listings.saved"));
+        DistributionSummary postsPerCall = meterRegistry.find("extraction.posts.per.call").summary();
+        values.put("openai.requests", postsPerCall == null ? 0.0 : postsPerCall.count());
+        for (String stage : STAGES) {
+            Timer timer = meterRegistry.find("ingestion.stage.duration").tag("stage", stage).timer();
+            values.put(stage + ".count", timer == null ? 0.0 : timer.count());
+            values.put(stage + ".ms", timer == null ? 0.0 : timer.totalTime(TimeUnit.MILLISECONDS));
+        }
+        return values;
+    }
+
+    private double count(String name) {
+        Counter counter = meterRegistry.find(name).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static double delta(Map<String, Double> before, Map<String, Double> after, String key) {
+        return after.get(key) - before.get(key);
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local stand-in for Reddit and OpenAI in the replay profile. Serves the recorded listing pages
+ * under {@code replay.fixtures-dir/reddit/*.json} as one /r/hardwareswap/new feed that only shows
+ * posts created before the (virtual) clock, with the same limit/after/before paging as Reddit.
+ * Chat completions answer from {@code openai/extractions.json} (post id to model/price pairs) and,
+ * for posts without a recording, pair the title's GPU models with the dollar amounts in the text.
+ */
+@Component
+@Profile("replay")
+public class ReplayStandInServer {
+    private static final Logger logger = Logger.getLogger(ReplayStandInServer.class.getName());
+
+    private static final Pattern LISTING_HEADER = Pattern.compile("(?m)^Listing (\\d+):\\n");
+    private static final Pattern DOLLAR_AMOUNT = Pattern.compile("\\$\\s?(\\d{2,5})");
+
+    private record RecordedPost(String fullname, long createdUtc, byte[] json) {}
+
+    @Value("${replay.fixtures-dir}")
+    private String fixturesDir;
+
+    @Value("${replay.server.port:18089}")
+    private int port;
+
+    // Simulated OpenAI response time; 0 measures the ingestion path on its own
+    @Value("${replay.openai.latency-ms:0}")
+    private long openAiLatencyMs;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private ListingClassifier listingClassifier;
+
+    @Autowired
+    private ListingPromptBuilder listingPromptBuilder;
+
+    // Newest first, like /new
+    private final List<RecordedPost> posts = new ArrayList<>();
+    private final Map<String, Integer> indexByFullname = new HashMap<>();
+    // The listing text the extraction prompt carries -> post id
+    private final Map<String, String> postIdByText = new HashMap<>();
+    private Map<String, List<Map<String, Object>>> extractions = Map.of();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        loadFixtures();
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(16, runnable -> {
+            Thread thread = new Thread(runnable, "replay-standin-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/api/v1/access_token", this::handleToken);
+        server.createContext("/r/hardwareswap/new", this::handleListing);
+        server.createContext("/v1/chat/completions", this::handleChatCompletion);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Replay stand-in serving " + posts.size() + " recorded posts on port " + port);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    public List<String> postIds() {
+        return posts.stream().map(post -> post.fullname().substring(3)).toList();
+    }
+
+    public long oldestCreatedUtc() {
+        return posts.isEmpty() ? 0 : posts.get(posts.size() - 1).createdUtc();
+    }
+
+    public long newestCreatedUtc() {
+        return posts.isEmpty() ? 0 : posts.get(0).createdUtc();
+    }
+
+    private void loadFixtures() throws IOException {
+        Path root = Path.of(fixturesDir);
+        Map<String, RecordedPost> byFullname = new HashMap<>();
+        try (Stream<Path> files = Files.list(root.resolve("reddit"))) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".json")).sorted().toList()) {
+                for (JsonNode child : objectMapper.readTree(file.toFile()).path("data").path("children")) {
+                    JsonNode data = child.path("data");
+                    String fullname = "t3_" + data.path("id").asText();
+                    byFullname.put(fullname, new RecordedPost(fullname, data.path("created_utc").asLong(),
+                        objectMapper.writeValueAsBytes(child)));
+                    postIdByText.put(listingPromptBuilder.listingText(data.path("title").asText(),
+                        data.path("selftext").asText()).strip(), data.path("id").asText());
+                }
+            }
+        }
+        posts.addAll(byFullname.values());
+        posts.sort(Comparator.comparingLong(RecordedPost::createdUtc).reversed());
+        for (int i = 0; i < posts.size(); i++) indexByFullname.put(posts.get(i).fullname(), i);
+
+        Path recorded = root.resolve("openai").resolve("extractions.json");
+        if (Files.exists(recorded)) {
+            extractions = objectMapper.readValue(recorded.toFile(), new TypeReference<>() {});
+        }
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        respond(exchange, objectMapper.writeValueAsBytes(Map.of(
+            "access_token", "replay-token", "token_type", "bearer", "expires_in", 86400, "scope", "*")));
+    }
+
+    private void handleListing(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        int limit = Integer.parseInt(query.getOrDefault("limit", "25"));
+
+        // Posts "created" after the virtual clock don't exist yet
+        long now = clock.instant().getEpochSecond();
+        int firstVisible = 0;
+        while (firstVisible < posts.size() && posts.get(firstVisible).createdUtc() > now) firstVisible++;
+
+        int from;
+        int to;
+        if (query.containsKey("before")) {
+            Integer cursor = indexByFullname.get(query.get("before"));
+            to = cursor == null ? firstVisible : Math.max(cursor, firstVisible);
+            from = Math.max(firstVisible, to - limit);
+        } else if (query.containsKey("after")) {
+            Integer cursor = indexByFullname.get(query.get("after"));
+            from = cursor == null ? posts.size() : Math.max(cursor + 1, firstVisible);
+            to = Math.min(posts.size(), from + limit);
+        } else {
+            from = firstVisible;
+            to = Math.min(posts.size(), from + limit);
+        }
+
+        boolean paged = query.containsKey("before") || query.containsKey("after");
+        String after = to > from && to < posts.size() ? posts.get(to - 1).fullname() : null;
+        String before = paged && to > from ? posts.get(from).fullname() : null;
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("{\"kind\": \"Listing\", \"data\": {\"after\": " + quoted(after) + ", \"dist\": " + (to - from)
+            + ", \"children\": [").getBytes(StandardCharsets.UTF_8));
+        for (int i = from; i < to; i++) {
+            if (i > from) body.write(',');
+            body.write(posts.get(i).json());
+        }
+        body.write(("], \"before\": " + quoted(before) + "}}").getBytes(StandardCharsets.UTF_8));
+        respond(exchange, body.toByteArray());
+    }
+
+    private void handleChatCompletion(HttpExchange exchange) throws IOException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        JsonNode messages = request.path("messages");
+        String content = messages.path(messages.size() - 1).path("content").asText();
+        int listingsStart = content.indexOf("Reddit Listings:");
+        String listings = listingsStart < 0 ? content : content.substring(listingsStart);
+
+        List<Map<String, Object>> answer = new ArrayList<>();
+        Matcher header = LISTING_HEADER.matcher(listings);
+        List<int[]> blocks = new ArrayList<>();
+        while (header.find()) blocks.add(new int[] {Integer.parseInt(header.group(1)), header.start(), header.end()});
+        for (int i = 0; i < blocks.size(); i++) {
+            int end = i + 1 < blocks.size() ? blocks.get(i + 1)[1] : listings.length();
+            String text = listings.substring(blocks.get(i)[2], end).strip();
+            for (Map<String, Object> pair : extract(text)) {
+                Map<String, Object> entry = new LinkedHashMap<>(pair);
+                entry.put("listing_id", "Listing " + blocks.get(i)[0]);
+                answer.add(entry);
+            }
+        }
+
+        if (openAiLatencyMs > 0) {
+            try {
+                Thread.sleep(openAiLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int promptTokens = 0;
+        for (JsonNode message : messages) promptTokens += ListingPromptBuilder.estimateTokens(message.path("content").asText());
+        respond(exchange, objectMapper.writeValueAsBytes(Map.of(
+            "choices", List.of(Map.of("index", 0, "message", Map.of(
+                "role", "assistant", "content", objectMapper.writeValueAsString(answer)))),
+            "usage", Map.of("prompt_tokens", promptTokens, "prompt_tokens_details", Map.of("cached_tokens", 0)))));
+    }
+
+    private List<Map<String, Object>> extract(String text) {
+        String postId = postIdByText.get(text);
+        List<Map<String, Object>> recorded = postId == null ? null : extractions.get(postId);
+        if (recorded != null) return recorded;
+
+        // No recording: n-th model in the title gets the n-th dollar amount in the post
+        String title = text.lines().findFirst().orElse("");
+        Matcher amount = DOLLAR_AMOUNT.matcher(text);
+        List<Map<String, Object>> pairs = new ArrayList<>();
+        for (ListingClassifier.ModelMatch model : listingClassifier.findModels(title)) {
+            if (!amount.find()) break;
+            pairs.add(Map.of("model", model.model(), "price", Integer.parseInt(amount.group(1))));
+        }
+        return pairs;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String quoted(String value) {
+        return value == null ? "null" : "\"" + value + "\"";
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
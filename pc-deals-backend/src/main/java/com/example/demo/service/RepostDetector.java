@@ -0,0 +1,262 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.util.SimHash;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes sellers reposting the same listing under a new post ID. Every extracted post's
+ * {@link SimHash} fingerprint is kept for window-days, in memory and in listing_fingerprints so a
+ * restart doesn't forget it. The index is keyed by author and the GPU models in the title, and a
+ * post is a repost when another one under the same key is within max-distance bits (unrelated
+ * texts average 32). Posts are a few dozen words, so a bumped repost can be 15 bits away while
+ * strangers filling in the same template can be closer than that; the key keeps the latter apart
+ * and leaves only a handful of fingerprints to compare. A match points at the first post of the
+ * chain. When the dollar amounts in both texts are the same, the earlier extraction is reused.
+ */
+@Component
+public class RepostDetector {
+    private static final Logger logger = Logger.getLogger(RepostDetector.class.getName());
+
+    public record Fingerprint(String redditPostId, String author, String models, long simhash, String priceSignature,
+                              LocalDateTime postedAt) {}
+
+    /** {@code reusableResult} is null when the prices changed and the repost needs a fresh extraction. */
+    public record Match(String originalPostId, String matchedPostId, int distance,
+                        List<Map<String, Object>> reusableResult) {}
+
+    private record Entry(Fingerprint fingerprint, String originalPostId, List<Map<String, Object>> result) {}
+
+    private static final Pattern DOLLAR_AMOUNT = Pattern.compile("\\$\\s?(\\d[\\d,]*)|(\\d[\\d,]*)\\s?\\$");
+
+    @Value("${ingestion.repost.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingestion.repost.max-distance:16}")
+    private int maxDistance;
+
+    @Value("${ingestion.repost.window-days:21}")
+    private int windowDays;
+
+    // Shorter posts share too much boilerplate to tell apart
+    @Value("${ingestion.repost.min-tokens:12}")
+    private int minTokens;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ListingClassifier listingClassifier;
+
+    @Autowired
+    private Clock clock;
+
+    private final Map<String, Entry> byPost = new HashMap<>();
+    private final Map<String, List<Entry>> byAuthorAndModels = new HashMap<>();
+
+    @PostConstruct
+    void load() {
+        if (!enabled) return;
+        try {
+            jdbcTemplate.query(
+                "SELECT reddit_post_id, author, models, simhash, price_signature, reddit_posted_at, original_post_id, " +
+                "extraction FROM listing_fingerprints WHERE reddit_posted_at >= ?",
+                rs -> {
+                    Fingerprint fingerprint = new Fingerprint(rs.getString(1), rs.getString(2), rs.getString(3),
+                        rs.getLong(4), rs.getString(5), rs.getTimestamp(6).toLocalDateTime());
+                    add(new Entry(fingerprint, rs.getString(7), readResult(rs.getString(8))));
+                },
+                Timestamp.valueOf(windowStart()));
+            logger.info("Loaded " + byPost.size() + " listing fingerprints from the last " + windowDays + " days");
+        } catch (Exception e) {
+            logger.warning("Could not load listing fingerprints, starting with an empty index: " + e.getMessage());
+        }
+    }
+
+    /** Null when detection is off, the author is unknown, or the post is too short to fingerprint reliably. */
+    public Fingerprint fingerprint(ListingCandidate candidate) {
+        if (!enabled) return null;
+        String author = candidate.author();
+        if (author == null || author.isEmpty() || "[deleted]".equals(author)) return null;
+        // Prices are compared through the price signature, so a price drop alone keeps the fingerprint
+        List<String> tokens = SimHash.tokens(DOLLAR_AMOUNT.matcher(candidate.text()).replaceAll(" \\$ "));
+        if (tokens.size() < minTokens) return null;
+        TreeSet<String> models = new TreeSet<>();
+        listingClassifier.findModels(candidate.title()).forEach(match -> models.add(match.model()));
+        return new Fingerprint(candidate.redditPostId(), author, String.join(",", models),
+            SimHash.fingerprint(tokens), priceSignature(candidate.text()), candidate.postedAt());
+    }
+
+    /** The closest other post by the same author within max-distance bits and window-days, or null. */
+    public synchronized Match findMatch(Fingerprint fingerprint) {
+        Entry best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Entry entry : byAuthorAndModels.getOrDefault(key(fingerprint), List.of())) {
+            if (entry.fingerprint().redditPostId().equals(fingerprint.redditPostId())) continue;
+            if (!withinWindow(entry.fingerprint().postedAt(), fingerprint.postedAt())) continue;
+            int distance = SimHash.distance(entry.fingerprint().simhash(), fingerprint.simhash());
+            if (distance > maxDistance) continue;
+            if (distance < bestDistance || (distance == bestDistance
+                    && entry.fingerprint().postedAt().isAfter(best.fingerprint().postedAt()))) {
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        if (best == null) return null;
+        boolean samePrices = best.result() != null
+            && best.fingerprint().priceSignature().equals(fingerprint.priceSignature());
+        return new Match(best.originalPostId(), best.fingerprint().redditPostId(), bestDistance,
+            samePrices ? best.result() : null);
+    }
+
+    /**
+     * Adds extracted posts to the index. {@code originalPostIds} holds each post's own ID, or the
+     * chain's first post for a repost. Posts without a fingerprint or whose extraction failed (null
+     * result) are left out, so a later repost never reuses a failure as "no GPUs". A failure here only
+     * costs future matches, so it is logged rather than failing the page.
+     */
+    public void record(List<Fingerprint> fingerprints, List<String> originalPostIds,
+                       List<List<Map<String, Object>>> results) {
+        List<Object[]> rows = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < fingerprints.size(); i++) {
+                Fingerprint fingerprint = fingerprints.get(i);
+                if (fingerprint == null || results.get(i) == null) continue;
+                add(new Entry(fingerprint, originalPostIds.get(i), results.get(i)));
+                rows.add(new Object[] {
+                    fingerprint.redditPostId(), fingerprint.author(), fingerprint.models(), fingerprint.simhash(),
+                    fingerprint.priceSignature(),
+                    Timestamp.valueOf(fingerprint.postedAt()), originalPostIds.get(i), writeResult(results.get(i))
+                });
+            }
+        }
+        if (rows.isEmpty()) return;
+        try {
+            jdbcTemplate.batchUpdate(
+                "INSERT INTO listing_fingerprints (reddit_post_id, author, models, simhash, price_signature, " +
+                "reddit_posted_at, original_post_id, extraction) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (reddit_post_id) DO UPDATE SET simhash = EXCLUDED.simhash, " +
+                "price_signature = EXCLUDED.price_signature, original_post_id = EXCLUDED.original_post_id, " +
+                "extraction = EXCLUDED.extraction",
+                rows);
+        } catch (Exception e) {
+            logger.warning("Could not store " + rows.size() + " listing fingerprints: " + e.getMessage());
+        }
+    }
+
+    /** Drops posts from the index and the table, e.g. before a replay re-ingests them. */
+    public void forget(Collection<String> redditPostIds) {
+        synchronized (this) {
+            redditPostIds.forEach(this::remove);
+        }
+        jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement("DELETE FROM listing_fingerprints WHERE reddit_post_id = ANY(?)");
+            Array ids = connection.createArrayOf("varchar", redditPostIds.toArray());
+            statement.setArray(1, ids);
+            return statement;
+        });
+    }
+
+    @Scheduled(cron = "0 45 4 * * *")
+    public void pruneFingerprints() {
+        LocalDateTime cutoff = windowStart();
+        synchronized (this) {
+            List<String> expired = byPost.values().stream()
+                .filter(entry -> entry.fingerprint().postedAt().isBefore(cutoff))
+                .map(entry -> entry.fingerprint().redditPostId())
+                .toList();
+            expired.forEach(this::remove);
+        }
+        int removed = jdbcTemplate.update("DELETE FROM listing_fingerprints WHERE reddit_posted_at < ?",
+            Timestamp.valueOf(cutoff));
+        logger.info("Pruned " + removed + " listing fingerprints older than " + windowDays + " days");
+    }
+
+    public synchronized int size() {
+        return byPost.size();
+    }
+
+    // Index plumbing, callers hold the monitor
+
+    private void add(Entry entry) {
+        remove(entry.fingerprint().redditPostId());
+        byPost.put(entry.fingerprint().redditPostId(), entry);
+        byAuthorAndModels.computeIfAbsent(key(entry.fingerprint()), key -> new ArrayList<>()).add(entry);
+    }
+
+    private void remove(String redditPostId) {
+        Entry entry = byPost.remove(redditPostId);
+        if (entry == null) return;
+        String key = key(entry.fingerprint());
+        List<Entry> entries = byAuthorAndModels.get(key);
+        if (entries == null) return;
+        entries.remove(entry);
+        if (entries.isEmpty()) byAuthorAndModels.remove(key);
+    }
+
+    private static String key(Fingerprint fingerprint) {
+        return fingerprint.author() + "|" + fingerprint.models();
+    }
+
+    private boolean withinWindow(LocalDateTime earlier, LocalDateTime later) {
+        return !earlier.isBefore(later.minusDays(windowDays)) && !earlier.isAfter(later.plusDays(windowDays));
+    }
+
+    private LocalDateTime windowStart() {
+        return LocalDateTime.ofInstant(clock.instant(), ZoneId.systemDefault()).minusDays(windowDays);
+    }
+
+    /** The distinct dollar amounts in the post, e.g. "420,450". */
+    static String priceSignature(String text) {
+        TreeSet<Integer> amounts = new TreeSet<>();
+        Matcher matcher = DOLLAR_AMOUNT.matcher(text);
+        while (matcher.find()) {
+            String digits = (matcher.group(1) != null ? matcher.group(1) : matcher.group(2)).replace(",", "");
+            if (digits.length() <= 6) amounts.add(Integer.parseInt(digits));
+        }
+        return String.join(",", amounts.stream().map(String::valueOf).toList());
+    }
+
+    private String writeResult(List<Map<String, Object>> result) {
+        if (result == null) return null;
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private List<Map<String, Object>> readResult(String json) {
+        if (json == null) return null;
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
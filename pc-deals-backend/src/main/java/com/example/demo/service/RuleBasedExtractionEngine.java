@@ -0,0 +1,169 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic extractor for the common hardwareswap shape: GPUs named in the [H] part of the
+ * title and a body line like "3080 - $450 shipped, $420 local". Each title model is paired with
+ * the dollar amounts on the body lines that mention it, preferring the shipped price, and the
+ * result carries a confidence so anything unusual (several prices per card, trade or parts
+ * wording, prices nowhere near a model) can be left to the LLM.
+ */
+@Component
+public class RuleBasedExtractionEngine implements ExtractionEngine {
+
+    public record Extraction(List<Map<String, Object>> listings, double confidence) {}
+
+    private record Amount(int price, boolean shipped, boolean local) {}
+
+    // "$450" or "450$"; the suffix form must not take a "$" that starts the next amount ("3070 $300")
+    private static final Pattern DOLLAR_AMOUNT =
+        Pattern.compile("\\$\\s?(\\d{1,2},\\d{3}|\\d{2,5})(?:\\.\\d{1,2})?|(\\d{1,2},\\d{3}|\\d{2,5})(?:\\.\\d{1,2})?\\s?\\$(?!\\s?\\d)");
+    private static final Pattern WANT_MARKER = Pattern.compile("\\[\\s*w\\s*]", Pattern.CASE_INSENSITIVE);
+
+    // Wording the prompt tells the LLM to judge (untested, broken, trade-only, bundles, ...)
+    private static final List<String> HAZARDS = List.of(
+        "untested", "broken", "for parts", "not working", "doesn't work", "artifact", "artifacts", "artifacting",
+        "waterblock", "water block", "trade only", "trades only", "bundle", "bundled", "combo", "package deal",
+        "together only", "obo", "or best offer");
+    // Whole words only, so "robot" isn't "obo" and "combos" isn't "combo"; inflections are listed above
+    private static final Pattern HAZARD = Pattern.compile(
+        "\\b(?:" + String.join("|", HAZARDS.stream().map(Pattern::quote).toList()) + ")\\b", Pattern.CASE_INSENSITIVE);
+
+    // How far after an amount "shipped"/"local" still describes it
+    private static final int TAG_WINDOW = 18;
+
+    private final ListingClassifier listingClassifier;
+
+    public RuleBasedExtractionEngine(ListingClassifier listingClassifier) {
+        this.listingClassifier = listingClassifier;
+    }
+
+    @Override
+    public String name() {
+        return "rules";
+    }
+
+    @Override
+    public List<List<Map<String, Object>>> extractAll(List<ListingCandidate> candidates) {
+        List<List<Map<String, Object>>> results = new ArrayList<>(candidates.size());
+        for (ListingCandidate candidate : candidates) results.add(extract(candidate).listings());
+        return results;
+    }
+
+    public Extraction extract(ListingCandidate candidate) {
+        String title = candidate.title();
+        String description = candidate.description() == null ? "" : candidate.description();
+
+        // Only what the poster has: models after [W] are what they want
+        Matcher want = WANT_MARKER.matcher(title);
+        int haveEnd = want.find() ? want.start() : title.length();
+        Set<String> models = new LinkedHashSet<>();
+        for (ListingClassifier.ModelMatch match : listingClassifier.findModels(title)) {
+            if (match.start() < haveEnd) models.add(match.model());
+        }
+        if (models.isEmpty()) return new Extraction(List.of(), 0.5);
+
+        double confidence = 1.0;
+        if (HAZARD.matcher(title + "\n" + description).find()) confidence = 0.3;
+        if (models.size() > 1) confidence *= 0.9;
+
+        List<String> lines = description.lines().toList();
+        List<Amount> allAmounts = new ArrayList<>();
+        for (String line : lines) allAmounts.addAll(amounts(line));
+        allAmounts.addAll(amounts(title));
+
+        List<Map<String, Object>> listings = new ArrayList<>();
+        Set<Integer> usedPrices = new LinkedHashSet<>();
+        for (String model : models) {
+            Integer price = null;
+            double modelConfidence = 0.2;
+
+            for (String line : lines) {
+                if (!mentions(line, model)) continue;
+                List<Amount> onLine = amounts(line);
+                if (onLine.isEmpty()) continue;
+                Amount shipped = onLine.stream().filter(Amount::shipped).findFirst().orElse(null);
+                List<Amount> untagged = onLine.stream().filter(amount -> !amount.local()).toList();
+                if (shipped != null) {
+                    price = shipped.price();
+                    modelConfidence = 0.95;
+                } else if (untagged.size() == 1) {
+                    price = untagged.get(0).price();
+                    modelConfidence = 0.85;
+                } else if (!untagged.isEmpty()) {
+                    price = untagged.get(0).price();
+                    modelConfidence = 0.5;
+                } else {
+                    // Local price only
+                    price = onLine.get(0).price();
+                    modelConfidence = 0.6;
+                }
+                break;
+            }
+
+            // One GPU and one asking price anywhere in the post, e.g. "$450 shipped" on its own line
+            if (price == null && models.size() == 1) {
+                List<Amount> shipped = allAmounts.stream().filter(Amount::shipped).toList();
+                Set<Integer> distinct = new LinkedHashSet<>();
+                allAmounts.forEach(amount -> distinct.add(amount.price()));
+                if (shipped.size() == 1) {
+                    price = shipped.get(0).price();
+                    modelConfidence = 0.8;
+                } else if (distinct.size() == 1) {
+                    price = distinct.iterator().next();
+                    modelConfidence = 0.75;
+                }
+            }
+
+            if (price == null) {
+                confidence = Math.min(confidence, 0.2);
+                continue;
+            }
+            if (price < 50 || price > 3000) modelConfidence = Math.min(modelConfidence, 0.3);
+            if (!usedPrices.add(price)) modelConfidence = Math.min(modelConfidence, 0.5);
+            confidence = Math.min(confidence, modelConfidence);
+
+            Map<String, Object> listing = new LinkedHashMap<>();
+            listing.put("model", model);
+            listing.put("price", price);
+            listing.put("listing_id", "Listing 1");
+            listings.add(listing);
+        }
+        return new Extraction(listings, confidence);
+    }
+
+    private boolean mentions(String line, String model) {
+        for (ListingClassifier.ModelMatch match : listingClassifier.findModels(line)) {
+            if (match.model().equals(model)) return true;
+        }
+        return false;
+    }
+
+    private static List<Amount> amounts(String line) {
+        List<Amount> amounts = new ArrayList<>();
+        String lowered = line.toLowerCase(Locale.ROOT);
+        Matcher matcher = DOLLAR_AMOUNT.matcher(line);
+        while (matcher.find()) {
+            String digits = (matcher.group(1) != null ? matcher.group(1) : matcher.group(2)).replace(",", "");
+            String after = lowered.substring(matcher.end(), Math.min(lowered.length(), matcher.end() + TAG_WINDOW));
+            // Stop at the next amount so "$450 shipped, $420 local" tags each price separately
+            int nextDollar = after.indexOf('$');
+            if (nextDollar >= 0) after = after.substring(0, nextDollar);
+            amounts.add(new Amount(Integer.parseInt(digits),
+                after.contains("ship"), after.contains("local") || after.contains("pickup") || after.contains("cash")));
+        }
+        return amounts;
+    }
+}
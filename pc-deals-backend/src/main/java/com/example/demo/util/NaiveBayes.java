@@ -0,0 +1,70 @@
+package com.example.demo.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two-class naive Bayes over sets of string features (each feature counted once per document),
+ * with add-one smoothing. Documents can carry a weight, counting as that many copies of themselves,
+ * for training sets sampled unevenly. Features seen in fewer than min-count training documents
+ * (unweighted) are dropped, which keeps the model small and ignores one-off words. Features unknown
+ * to the model are ignored when scoring.
+ *
+ * {@link Model} is a plain record so it serializes to JSON as is.
+ */
+public final class NaiveBayes {
+
+    private NaiveBayes() {}
+
+    public record Model(double positives, double negatives, double positiveTotal, double negativeTotal,
+                        Map<String, double[]> counts) {
+
+        /** P(positive | features). Naive Bayes is overconfident, so read it as a score to threshold. */
+        public double probability(Collection<String> features) {
+            int vocabulary = counts.size();
+            double logOdds = Math.log((positives + 1.0) / (negatives + 1.0));
+            for (String feature : new HashSet<>(features)) {
+                double[] count = counts.get(feature);
+                if (count == null) continue;
+                logOdds += Math.log((count[0] + 1.0) / (positiveTotal + vocabulary))
+                    - Math.log((count[1] + 1.0) / (negativeTotal + vocabulary));
+            }
+            return 1 / (1 + Math.exp(-logOdds));
+        }
+    }
+
+    public static Model train(List<? extends Collection<String>> documents, List<Boolean> labels, int minCount) {
+        return train(documents, labels, Collections.nCopies(documents.size(), 1.0), minCount);
+    }
+
+    public static Model train(List<? extends Collection<String>> documents, List<Boolean> labels, List<Double> weights,
+                              int minCount) {
+        Map<String, double[]> counts = new HashMap<>();
+        Map<String, Integer> documentCounts = new HashMap<>();
+        double positives = 0;
+        double negatives = 0;
+        for (int i = 0; i < documents.size(); i++) {
+            boolean positive = labels.get(i);
+            double weight = weights.get(i);
+            if (positive) positives += weight;
+            else negatives += weight;
+            for (String feature : new HashSet<>(documents.get(i))) {
+                counts.computeIfAbsent(feature, key -> new double[2])[positive ? 0 : 1] += weight;
+                documentCounts.merge(feature, 1, Integer::sum);
+            }
+        }
+        counts.keySet().removeIf(feature -> documentCounts.get(feature) < minCount);
+
+        double positiveTotal = 0;
+        double negativeTotal = 0;
+        for (double[] count : counts.values()) {
+            positiveTotal += count[0];
+            negativeTotal += count[1];
+        }
+        return new Model(positives, negatives, positiveTotal, negativeTotal, counts);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demo.util;
+
+import java.util.Arrays;
+
+/**
+ * Count, mean and variance of the values seen over a sliding time window, kept in a ring of
+ * fixed-width time buckets. Each bucket holds a count, mean and sum of squared deviations (M2)
+ * updated with Welford's method, and a window query merges the live buckets with Chan's pairwise
+ * formula. Nothing is ever summed as raw squares, so the variance stays accurate for prices in the
+ * thousands. Adding is O(1) and a query is O(buckets), with no allocation beyond the result.
+ *
+ * The window is whole buckets: the bucket holding {@code now} plus the buckets-1 before it, so it
+ * starts up to one bucket later than now - buckets * bucketSeconds. Values older than that are
+ * ignored, and values in the future count towards the current bucket.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+public final class RollingStats {
+
+    public record Summary(long count, double mean, double m2) {
+        /** Sample variance, like Postgres VARIANCE/STDDEV; NaN below two values. */
+        public double variance() {
+            return count < 2 ? Double.NaN : m2 / (count - 1);
+        }
+
+        public double stddev() {
+            return Math.sqrt(variance());
+        }
+    }
+
+    private final long bucketSeconds;
+    private final long[] bucket;
+    private final long[] count;
+    private final double[] mean;
+    private final double[] m2;
+
+    public RollingStats(int buckets, long bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+        this.bucket = new long[buckets];
+        this.count = new long[buckets];
+        this.mean = new double[buckets];
+        this.m2 = new double[buckets];
+        Arrays.fill(bucket, Long.MIN_VALUE);
+    }
+
+    /** Epoch second the window of a RollingStats with these dimensions starts at when queried at {@code nowEpochSecond}. */
+    public static long windowStart(long nowEpochSecond, int buckets, long bucketSeconds) {
+        return (Math.floorDiv(nowEpochSecond, bucketSeconds) - buckets + 1) * bucketSeconds;
+    }
+
+    public void add(long epochSecond, double value, long nowEpochSecond) {
+        long current = Math.floorDiv(nowEpochSecond, bucketSeconds);
+        long index = Math.min(Math.floorDiv(epochSecond, bucketSeconds), current);
+        if (index <= current - bucket.length) return;
+
+        int slot = (int) Math.floorMod(index, bucket.length);
+        if (bucket[slot] != index) {
+            // The slot still holds a bucket that has left the window
+            bucket[slot] = index;
+            count[slot] = 0;
+            mean[slot] = 0;
+            m2[slot] = 0;
+        }
+        long n = ++count[slot];
+        double delta = value - mean[slot];
+        mean[slot] += delta / n;
+        m2[slot] += delta * (value - mean[slot]);
+    }
+
+    public Summary summary(long nowEpochSecond) {
+        long current = Math.floorDiv(nowEpochSecond, bucketSeconds);
+        long n = 0;
+        double totalMean = 0;
+        double totalM2 = 0;
+        for (int slot = 0; slot < bucket.length; slot++) {
+            long nb = count[slot];
+            if (nb == 0 || bucket[slot] > current || bucket[slot] <= current - bucket.length) continue;
+            long merged = n + nb;
+            double delta = mean[slot] - totalMean;
+            totalMean += delta * nb / merged;
+            totalM2 += m2[slot] + delta * delta * ((double) n * nb / merged);
+            n = merged;
+        }
+        return new Summary(n, totalMean, totalM2);
+    }
+}
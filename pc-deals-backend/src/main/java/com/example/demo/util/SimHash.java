@@ -0,0 +1,70 @@
+package com.example.demo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 64-bit SimHash over the words and adjacent word pairs of a text. Texts that share most of those
+ * features (a repost with a new timestamp link or an added "bump" line) get fingerprints that
+ * differ in far fewer bits than unrelated texts, which differ in about 32.
+ */
+public final class SimHash {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9$]+");
+
+    private SimHash() {}
+
+    /** Lowercased words, punctuation dropped; dollar signs stay attached to prices, links split into words. */
+    public static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.matcher(text.toLowerCase(Locale.ROOT)).replaceAll(" ").trim().split(" ")) {
+            if (!token.isEmpty()) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    public static long fingerprint(List<String> tokens) {
+        int[] weights = new int[64];
+        for (int i = 0; i < tokens.size(); i++) {
+            add(weights, hash(tokens.get(i), null));
+            if (i + 1 < tokens.size()) add(weights, hash(tokens.get(i), tokens.get(i + 1)));
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) fingerprint |= 1L << bit;
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static void add(int[] weights, long hash) {
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+        }
+    }
+
+    // FNV-1a over the feature, then the splitmix64 finalizer so every output bit depends on every input char
+    private static long hash(String first, String second) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < first.length(); i++) {
+            hash ^= first.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        if (second != null) {
+            hash ^= ' ';
+            hash *= 0x100000001b3L;
+            for (int i = 0; i < second.length(); i++) {
+                hash ^= second.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
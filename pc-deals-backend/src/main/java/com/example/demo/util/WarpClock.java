@@ -0,0 +1,62 @@
+package com.example.demo.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * A clock that runs {@code warpFactor} times faster than real time from a chosen virtual
+ * instant. A warp factor of 0 freezes it, and the owner moves it with {@link #jumpTo}. Used by
+ * the replay profile so recorded posts "arrive" over days of virtual time in a few seconds.
+ */
+public class WarpClock extends Clock {
+
+    private record Anchor(Instant virtualInstant, long realNanos, double warpFactor) {}
+
+    private final ZoneId zone;
+    private volatile Anchor anchor;
+
+    public WarpClock(Instant start, double warpFactor, ZoneId zone) {
+        this.zone = zone;
+        this.anchor = new Anchor(start, System.nanoTime(), warpFactor);
+    }
+
+    public synchronized void jumpTo(Instant virtualNow) {
+        anchor = new Anchor(virtualNow, System.nanoTime(), anchor.warpFactor());
+    }
+
+    public synchronized void setWarpFactor(double warpFactor) {
+        anchor = new Anchor(instant(), System.nanoTime(), warpFactor);
+    }
+
+    public double getWarpFactor() {
+        return anchor.warpFactor();
+    }
+
+    /** Real time it takes for {@code virtual} to pass on this clock; zero when the clock is frozen. */
+    public Duration realDuration(Duration virtual) {
+        double warpFactor = anchor.warpFactor();
+        return warpFactor <= 0 ? Duration.ZERO : Duration.ofNanos((long) (virtual.toNanos() / warpFactor));
+    }
+
+    @Override
+    public Instant instant() {
+        Anchor current = anchor;
+        long elapsed = (long) ((System.nanoTime() - current.realNanos()) * current.warpFactor());
+        return current.virtualInstant().plusNanos(elapsed);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        Anchor current = anchor;
+        WarpClock copy = new WarpClock(current.virtualInstant(), current.warpFactor(), zone);
+        copy.anchor = current;
+        return copy;
+    }
+}
@@ -0,0 +1,14 @@
+-- Starting point for Postgres. V1-V11 and the old V12 were written for MySQL and never ran here
+-- (Flyway wasn't on the classpath); they are kept in db/mysql-legacy. Existing databases, whose
+-- tables Hibernate created, are baselined at 12 (spring.flyway.baseline-version) and skip this;
+-- a fresh database gets gpu_prices as Hibernate would have created it, so V13 onwards can rely on it.
+-- users and the other JPA tables are still left to Hibernate.
+CREATE TABLE IF NOT EXISTS gpu_prices (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    model VARCHAR(255),
+    price INTEGER,
+    reddit_url VARCHAR(255),
+    reddit_posted_at TIMESTAMP(6),
+    reddit_post_id VARCHAR(255),
+    deal_score DOUBLE PRECISION
+);
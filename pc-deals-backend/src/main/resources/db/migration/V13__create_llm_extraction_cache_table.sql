@@ -0,0 +1,9 @@
+-- Cache of OpenAI extraction results, keyed by a hash of the normalized post text + prompt version
+CREATE TABLE IF NOT EXISTS llm_extraction_cache (
+    content_hash CHAR(64) PRIMARY KEY,
+    prompt_version VARCHAR(32) NOT NULL,
+    result_json TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_llm_extraction_cache_prompt_version ON llm_extraction_cache (prompt_version);
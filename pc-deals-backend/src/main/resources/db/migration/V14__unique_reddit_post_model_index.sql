@@ -0,0 +1,11 @@
+-- A post can list several GPUs, so uniqueness is per (reddit_post_id, model).
+-- The index also serves reddit_post_id lookups (leading column).
+
+-- Remove duplicates left by overlapping scrapes, keeping the earliest row
+DELETE FROM gpu_prices a
+USING gpu_prices b
+WHERE a.reddit_post_id = b.reddit_post_id
+  AND a.model = b.model
+  AND a.id > b.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_gpu_prices_reddit_post_id_model ON gpu_prices (reddit_post_id, model);
@@ -0,0 +1,16 @@
+-- Newest Reddit post the scraper has processed, accepted or not
+CREATE TABLE IF NOT EXISTS ingestion_checkpoint (
+    source VARCHAR(64) PRIMARY KEY,
+    newest_fullname VARCHAR(32) NOT NULL,
+    newest_created_utc BIGINT NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Every post that went through filtering/extraction, so it is never evaluated twice
+CREATE TABLE IF NOT EXISTS ingestion_processed_posts (
+    reddit_post_id VARCHAR(32) PRIMARY KEY,
+    outcome VARCHAR(32) NOT NULL,
+    processed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingestion_processed_posts_processed_at ON ingestion_processed_posts (processed_at);
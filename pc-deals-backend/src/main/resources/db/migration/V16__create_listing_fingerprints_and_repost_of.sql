@@ -0,0 +1,23 @@
+-- SimHash of each extracted post's text, so a repost under a new post ID can be recognized
+CREATE TABLE IF NOT EXISTS listing_fingerprints (
+    reddit_post_id VARCHAR(32) PRIMARY KEY,
+    author VARCHAR(64) NOT NULL,
+    -- Canonical GPU models named in the title, comma-separated
+    models VARCHAR(255) NOT NULL,
+    simhash BIGINT NOT NULL,
+    price_signature VARCHAR(255) NOT NULL,
+    reddit_posted_at TIMESTAMP NOT NULL,
+    -- The first post of the repost chain (the post itself when it is not a repost)
+    original_post_id VARCHAR(32) NOT NULL,
+    -- Extracted model/price pairs as JSON, reused when a repost keeps the same prices
+    extraction TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_listing_fingerprints_reddit_posted_at ON listing_fingerprints (reddit_posted_at);
+
+-- Set on listings saved from a repost; market aggregates only count rows where it is NULL
+ALTER TABLE gpu_prices ADD COLUMN IF NOT EXISTS repost_of VARCHAR(32);
+
+CREATE INDEX IF NOT EXISTS idx_gpu_prices_originals_model_posted_at
+    ON gpu_prices (model, reddit_posted_at) WHERE repost_of IS NULL;
@@ -0,0 +1,22 @@
+-- Historical crawls of /r/hardwareswap/new, resumable from the last page that was written
+CREATE TABLE IF NOT EXISTS backfill_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    status VARCHAR(16) NOT NULL,
+    -- Bounds: posts created in [since_utc, until_utc] (epoch seconds), and/or a number of saved listings
+    since_utc BIGINT,
+    until_utc BIGINT,
+    max_listings INTEGER,
+    -- Reddit "after" cursor of the last written page and that page's oldest post
+    cursor VARCHAR(32),
+    cursor_created_utc BIGINT,
+    pages_done INTEGER NOT NULL DEFAULT 0,
+    posts_read INTEGER NOT NULL DEFAULT 0,
+    listings_saved INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_backfill_jobs_status ON backfill_jobs (status);
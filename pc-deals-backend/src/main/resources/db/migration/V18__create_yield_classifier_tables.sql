@@ -0,0 +1,25 @@
+-- Every post that was sent to extraction, with its text. Whether it yielded anything is read from
+-- gpu_prices at training time; explored marks posts the pre-classifier would have skipped
+CREATE TABLE IF NOT EXISTS extraction_training_posts (
+    reddit_post_id VARCHAR(32) PRIMARY KEY,
+    title TEXT NOT NULL,
+    description TEXT NOT NULL,
+    reddit_posted_at TIMESTAMP NOT NULL,
+    explored BOOLEAN NOT NULL DEFAULT FALSE,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_extraction_training_posts_posted_at ON extraction_training_posts (reddit_posted_at);
+
+-- One row per retraining run; the newest active model gates extraction
+CREATE TABLE IF NOT EXISTS yield_classifier_models (
+    id BIGSERIAL PRIMARY KEY,
+    training_posts INTEGER NOT NULL,
+    holdout_posts INTEGER NOT NULL,
+    threshold DOUBLE PRECISION NOT NULL,
+    holdout_skipped_share DOUBLE PRECISION NOT NULL,
+    holdout_missed_share DOUBLE PRECISION NOT NULL,
+    active BOOLEAN NOT NULL,
+    model_json TEXT NOT NULL,
+    trained_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
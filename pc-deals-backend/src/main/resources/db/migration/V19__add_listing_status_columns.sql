@@ -0,0 +1,12 @@
+-- What the status refresher last saw of each listing's post on Reddit (/api/info)
+-- listing_status: SELLING, CLOSED or REMOVED; NULL until the first check
+ALTER TABLE gpu_prices ADD COLUMN IF NOT EXISTS listing_status VARCHAR(16);
+-- When the flair was first seen as CLOSED, so the sale happened between the previous check and this
+ALTER TABLE gpu_prices ADD COLUMN IF NOT EXISTS sold_at TIMESTAMP;
+-- When the post was first seen removed or deleted
+ALTER TABLE gpu_prices ADD COLUMN IF NOT EXISTS removed_at TIMESTAMP;
+ALTER TABLE gpu_prices ADD COLUMN IF NOT EXISTS status_checked_at TIMESTAMP;
+
+-- Listings still worth re-checking: neither sold nor removed
+CREATE INDEX IF NOT EXISTS idx_gpu_prices_status_pending_posted_at
+    ON gpu_prices (reddit_posted_at) WHERE sold_at IS NULL AND removed_at IS NULL;
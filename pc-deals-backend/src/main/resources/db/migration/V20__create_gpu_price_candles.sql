@@ -0,0 +1,29 @@
+-- Daily open/high/low/close of original listings (not reposts) per model, kept up to date by
+-- PriceCandleService as listings are inserted and deleted. Open/close are the prices of the day's
+-- first and last listing by (reddit_posted_at, id); the id breaks ties between equal timestamps.
+CREATE TABLE IF NOT EXISTS gpu_price_candles (
+    model VARCHAR(255) NOT NULL,
+    day DATE NOT NULL,
+    low_price INTEGER NOT NULL,
+    high_price INTEGER NOT NULL,
+    price_sum BIGINT NOT NULL,
+    listings INTEGER NOT NULL,
+    open_price INTEGER NOT NULL,
+    open_at TIMESTAMP NOT NULL,
+    open_id BIGINT NOT NULL,
+    close_price INTEGER NOT NULL,
+    close_at TIMESTAMP NOT NULL,
+    close_id BIGINT NOT NULL,
+    PRIMARY KEY (model, day)
+);
+
+-- One-time backfill from the existing listings
+INSERT INTO gpu_price_candles (model, day, low_price, high_price, price_sum, listings,
+                               open_price, open_at, open_id, close_price, close_at, close_id)
+SELECT model, reddit_posted_at::date, MIN(price), MAX(price), SUM(price), COUNT(*),
+       (ARRAY_AGG(price ORDER BY reddit_posted_at, id))[1], MIN(reddit_posted_at), (ARRAY_AGG(id ORDER BY reddit_posted_at, id))[1],
+       (ARRAY_AGG(price ORDER BY reddit_posted_at DESC, id DESC))[1], MAX(reddit_posted_at), (ARRAY_AGG(id ORDER BY reddit_posted_at DESC, id DESC))[1]
+FROM gpu_prices
+WHERE repost_of IS NULL AND price IS NOT NULL AND reddit_posted_at IS NOT NULL
+GROUP BY model, reddit_posted_at::date
+ON CONFLICT (model, day) DO NOTHING;
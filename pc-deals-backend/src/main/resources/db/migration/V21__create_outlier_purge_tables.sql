@@ -0,0 +1,52 @@
+-- Background outlier purges: one model at a time, in chunks, moving rows to gpu_prices_quarantine
+CREATE TABLE IF NOT EXISTS outlier_purge_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    status VARCHAR(16) NOT NULL,
+    -- MEAN (threshold is a ratio to the average) or MAD (threshold is in robust z-scores)
+    band VARCHAR(8) NOT NULL,
+    threshold DOUBLE PRECISION NOT NULL,
+    models_total INTEGER,
+    models_done INTEGER NOT NULL DEFAULT 0,
+    -- Models are purged in name order; a resumed job continues after this one
+    last_model_done VARCHAR(255),
+    -- Price bounds of the model in progress, fixed when it started so a resumed chunk uses the same band
+    current_model VARCHAR(255),
+    current_low DOUBLE PRECISION,
+    current_high DOUBLE PRECISION,
+    rows_quarantined INTEGER NOT NULL DEFAULT 0,
+    rows_restored INTEGER NOT NULL DEFAULT 0,
+    -- Quarantined rows that couldn't go back because the same (reddit_post_id, model) was saved again
+    restore_conflicts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP,
+    restore_started_at TIMESTAMP,
+    restored_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_outlier_purge_jobs_status ON outlier_purge_jobs (status);
+
+-- gpu_prices rows taken out by a purge, as they were, until restored
+CREATE TABLE IF NOT EXISTS gpu_prices_quarantine (
+    id BIGINT PRIMARY KEY,
+    model VARCHAR(255) NOT NULL,
+    price INTEGER,
+    reddit_url VARCHAR(255),
+    reddit_posted_at TIMESTAMP,
+    reddit_post_id VARCHAR(255),
+    deal_score DOUBLE PRECISION,
+    repost_of VARCHAR(32),
+    listing_status VARCHAR(16),
+    sold_at TIMESTAMP,
+    removed_at TIMESTAMP,
+    status_checked_at TIMESTAMP,
+    purge_job_id BIGINT NOT NULL REFERENCES outlier_purge_jobs (id),
+    -- The band the price fell outside of
+    low_price_bound DOUBLE PRECISION,
+    high_price_bound DOUBLE PRECISION,
+    quarantined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_gpu_prices_quarantine_purge_job_id ON gpu_prices_quarantine (purge_job_id, id);
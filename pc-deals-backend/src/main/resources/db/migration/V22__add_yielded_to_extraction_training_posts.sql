@@ -0,0 +1,11 @@
+-- The training label, recorded when the post was extracted: whether extraction returned any listing.
+-- Reading it from gpu_prices at training time relabelled posts whose rows were later quarantined or deleted
+ALTER TABLE extraction_training_posts ADD COLUMN IF NOT EXISTS yielded BOOLEAN;
+
+-- Posts stored before this column: their rows are either still in gpu_prices or quarantined
+UPDATE extraction_training_posts t
+SET yielded = EXISTS (SELECT 1 FROM gpu_prices g WHERE g.reddit_post_id = t.reddit_post_id)
+    OR EXISTS (SELECT 1 FROM gpu_prices_quarantine q WHERE q.reddit_post_id = t.reddit_post_id)
+WHERE yielded IS NULL;
+
+ALTER TABLE extraction_training_posts ALTER COLUMN yielded SET NOT NULL;
@@ -0,0 +1,119 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.model.RedditPost;
+import com.example.demo.service.ListingClassifier;
+import com.example.demo.service.RedditPageReader;
+import com.example.demo.service.RuleBasedExtractionEngine;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Runs {@link RuleBasedExtractionEngine} over the fixture posts and compares it with the expected
+ * LLM answers (fixtures/openai/extractions.json, post id to model/price pairs). For each
+ * confidence threshold it prints the share of posts the rules would answer and how often they
+ * agree with the LLM there, which is what extraction.rules.confidence-threshold trades off.
+ * The bundled fixtures are synthetic, written in the shapes the rules were built for, so agreement
+ * on them is an upper bound; point it at real recorded posts before trusting a threshold.
+ * Also prints per-post rule latency. Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.benchmark.ExtractionEngineComparison [-Dexec.args=fixtures-dir]
+ */
+public class ExtractionEngineComparison {
+
+    private record Compared(ListingCandidate candidate, double confidence, boolean agrees,
+                            Set<String> rules, Set<String> llm) {}
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Path.of(args.length > 0 ? args[0] : "src/test/resources/synthetic-fixtures");
+        ObjectMapper objectMapper = new ObjectMapper();
+        ListingClassifier classifier = new ListingClassifier();
+        RuleBasedExtractionEngine rules = new RuleBasedExtractionEngine(classifier);
+        RedditPageReader reader = new RedditPageReader(objectMapper);
+
+        Map<String, List<Map<String, Object>>> recorded = objectMapper.readValue(
+            fixtures.resolve("openai/extractions.json").toFile(), new TypeReference<>() {});
+
+        // Same filtering as the ingestion pipeline, limited to posts with a recorded LLM answer
+        List<ListingCandidate> candidates = new ArrayList<>();
+        try (Stream<Path> files = Files.list(fixtures.resolve("reddit"))) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".json")).sorted().toList()) {
+                for (RedditPost post : reader.read(Files.readAllBytes(file)).posts()) {
+                    if ((post.title() + " " + post.selftext()).length() > 1400) continue;
+                    ListingClassifier.Classification classification = classifier.classify(post.title(), post.selftext());
+                    if (!classification.containsGPU() || classification.isSkipped()) continue;
+                    if (recorded.containsKey(post.id())) candidates.add(post.toCandidate());
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            System.out.println("No fixture posts with LLM answers under " + fixtures);
+            return;
+        }
+
+        List<Compared> compared = new ArrayList<>();
+        for (ListingCandidate candidate : candidates) {
+            RuleBasedExtractionEngine.Extraction extraction = rules.extract(candidate);
+            Set<String> byRules = pairs(extraction.listings(), classifier);
+            Set<String> byLlm = pairs(recorded.get(candidate.redditPostId()), classifier);
+            compared.add(new Compared(candidate, extraction.confidence(), byRules.equals(byLlm), byRules, byLlm));
+        }
+
+        // Latency: every post, many times over, after a warm-up pass
+        int rounds = 200;
+        long[] perPostNanos = new long[candidates.size() * rounds];
+        for (int i = 0; i < 50; i++) candidates.forEach(rules::extract);
+        int n = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (ListingCandidate candidate : candidates) {
+                long start = System.nanoTime();
+                rules.extract(candidate);
+                perPostNanos[n++] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(perPostNanos);
+
+        System.out.printf("%d fixture posts, rules agree with the LLM on %.1f%% overall%n",
+            compared.size(), 100.0 * compared.stream().filter(Compared::agrees).count() / compared.size());
+        System.out.printf("Rule latency per post: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+            perPostNanos[perPostNanos.length / 2] / 1e3,
+            perPostNanos[(int) (perPostNanos.length * 0.99)] / 1e3,
+            perPostNanos[perPostNanos.length - 1] / 1e3);
+        System.out.println();
+        System.out.println("threshold  answered-by-rules  agreement-there  LLM-calls-left");
+        for (int percent = 50; percent <= 95; percent += 5) {
+            double threshold = percent / 100.0;
+            List<Compared> answered = compared.stream().filter(c -> c.confidence() >= threshold).toList();
+            double agreement = answered.isEmpty() ? 0 : 100.0 * answered.stream().filter(Compared::agrees).count() / answered.size();
+            System.out.printf(Locale.ROOT, "   %.2f         %5.1f%%            %5.1f%%          %d%n",
+                threshold, 100.0 * answered.size() / compared.size(), agreement, compared.size() - answered.size());
+        }
+
+        List<Compared> confidentMisses = compared.stream().filter(c -> !c.agrees() && c.confidence() >= 0.8).toList();
+        if (!confidentMisses.isEmpty()) {
+            System.out.println();
+            System.out.println("Confident disagreements (>= 0.80):");
+            confidentMisses.stream().limit(10).forEach(c -> System.out.printf("  %.2f %s%n       rules %s, llm %s%n",
+                c.confidence(), c.candidate().title(), c.rules(), c.llm()));
+        }
+    }
+
+    private static Set<String> pairs(List<Map<String, Object>> listings, ListingClassifier classifier) {
+        Set<String> pairs = new TreeSet<>();
+        for (Map<String, Object> listing : listings) {
+            String model = classifier.canonicalModel(String.valueOf(listing.get("model")));
+            pairs.add((model == null ? listing.get("model") : model) + " @ " + listing.get("price"));
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.service.ListingClassifier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the precompiled {@link ListingClassifier} with the stream-of-regexes approach the
+ * ingestion loop used before (compile one pattern per model per post, lowercase the text once
+ * per skip keyword). Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.benchmark.ListingClassifierBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingClassifierBenchmark {
+
+    private static final List<String[]> POSTS = List.of(
+        new String[] {"[USA-CA] [H] EVGA RTX 3080 FTW3 Ultra [W] PayPal, Local Cash",
+            "Selling my 3080, works great, never mined on. $450 shipped or $420 local. Timestamps: https://imgur.com/a/abc"},
+        new String[] {"[USA-TX] [H] Ryzen 7 5800X3D, 32GB DDR4 [W] PayPal",
+            "CPU was delidded by a friend, RAM runs at 3600 CL16. Prices include shipping."},
+        new String[] {"[USA-NY] [H] Full custom build with 4090 and 7800X3D [W] Local cash",
+            "Not looking to separate. Gaming PC in a Lian Li O11 with 64GB RAM."},
+        new String[] {"[USA-FL] [H] RX 6800XT, RTX 4070 Ti Super [W] PayPal",
+            "6800 XT reference - $380 shipped\n4070 Ti Super Gigabyte Windforce - $700 shipped"}
+    );
+
+    private ListingClassifier classifier;
+
+    @Setup
+    public void setup() {
+        classifier = new ListingClassifier();
+    }
+
+    @Benchmark
+    public int precompiledClassifier() {
+        int accepted = 0;
+        for (String[] post : POSTS) {
+            ListingClassifier.Classification classification = classifier.classify(post[0], post[1]);
+            if (classification.containsGPU() && !classification.isSkipped()) accepted++;
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    public int streamOfRegexes() {
+        int accepted = 0;
+        for (String[] post : POSTS) {
+            String title = post[0];
+            boolean containsGPU = ListingClassifier.GPU_MODELS.stream().anyMatch(model -> {
+                Pattern pattern = Pattern.compile("(?i)(?<!\\d)" + Pattern.quote(model) + "(?!\\d)");
+                return pattern.matcher(title).find();
+            });
+            if (!containsGPU) continue;
+            String matchedKeyword = null;
+            for (String keyword : ListingClassifier.SKIP_KEYWORDS) {
+                if ((title + " " + post[1]).toLowerCase().contains(keyword.toLowerCase())) {
+                    matchedKeyword = keyword;
+                    break;
+                }
+            }
+            if (matchedKeyword == null) accepted++;
+        }
+        return accepted;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(ListingClassifierBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
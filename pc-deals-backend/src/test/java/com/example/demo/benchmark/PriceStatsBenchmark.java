@@ -0,0 +1,88 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.util.RollingStats;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a price analysis costs once its 7-day stats come from {@link RollingStats} (merge 168 hourly
+ * buckets) instead of a scan: the scan is the two passes over the model's recent listings that the
+ * database does for AVG and STDDEV, here over an in-memory array so it is a lower bound for the
+ * SQL path, which also pays a connection and a round trip per call. Also measures adding a listing.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.benchmark.PriceStatsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceStatsBenchmark {
+
+    private static final int BUCKETS = 168;
+    private static final long BUCKET_SECONDS = 3600;
+    private static final long NOW = 1_760_000_000L;
+
+    // Listings of one model over the last 10 days; a popular model sees a few hundred a week
+    @Param({"300", "3000"})
+    public int listings;
+
+    private long[] postedAt;
+    private int[] prices;
+    private RollingStats stats;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        postedAt = new long[listings];
+        prices = new int[listings];
+        stats = new RollingStats(BUCKETS, BUCKET_SECONDS);
+        for (int i = 0; i < listings; i++) {
+            postedAt[i] = NOW - random.nextInt(10 * 24 * 3600);
+            prices[i] = 350 + random.nextInt(400);
+            stats.add(postedAt[i], prices[i], NOW);
+        }
+    }
+
+    @Benchmark
+    public double rollingSummary() {
+        return stats.summary(NOW).stddev();
+    }
+
+    @Benchmark
+    public double twoPassScan() {
+        long since = NOW - 7 * 24 * 3600;
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < postedAt.length; i++) {
+            if (postedAt[i] < since) continue;
+            count++;
+            sum += prices[i];
+        }
+        double mean = sum / count;
+        double squares = 0;
+        for (int i = 0; i < postedAt.length; i++) {
+            if (postedAt[i] < since) continue;
+            squares += (prices[i] - mean) * (prices[i] - mean);
+        }
+        return Math.sqrt(squares / (count - 1));
+    }
+
+    @Benchmark
+    public void addListing() {
+        int i = next++ % listings;
+        stats.add(postedAt[i], prices[i], NOW);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(PriceStatsBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.model.RedditPost;
+import com.example.demo.service.ListingClassifier;
+import com.example.demo.service.ListingPromptBuilder;
+import com.example.demo.service.RedditPageReader;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Compares extraction requests built from whole posts (the old single user message) with the
+ * trimmed listings from {@link ListingPromptBuilder}, over the fixture pages and packed the way
+ * ListingExtractionService packs them. Prints average prompt tokens per request and per post
+ * (estimated with ListingPromptBuilder.estimateTokens) and checks that every expected LLM price
+ * is still in the trimmed text. The bundled fixtures are synthetic (see their README), so the
+ * results only hold for posts shaped like them. Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.benchmark.PromptTrimmingBenchmark [-Dexec.args="fixtures-dir context-lines"]
+ */
+public class PromptTrimmingBenchmark {
+
+    private static final int BATCH_CHAR_BUDGET = 6000;
+    private static final int MAX_POSTS_PER_BATCH = 8;
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Path.of(args.length > 0 ? args[0] : "src/test/resources/synthetic-fixtures");
+        int contextLines = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        ObjectMapper objectMapper = new ObjectMapper();
+        ListingClassifier classifier = new ListingClassifier();
+        ListingPromptBuilder builder = new ListingPromptBuilder(classifier, contextLines, true);
+        RedditPageReader reader = new RedditPageReader(objectMapper);
+
+        Path recordedFile = fixtures.resolve("openai/extractions.json");
+        Map<String, List<Map<String, Object>>> recorded = Files.exists(recordedFile)
+            ? objectMapper.readValue(recordedFile.toFile(), new TypeReference<>() {}) : Map.of();
+
+        // Same filtering as the ingestion pipeline
+        List<ListingCandidate> candidates = new ArrayList<>();
+        try (Stream<Path> files = Files.list(fixtures.resolve("reddit"))) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".json")).sorted().toList()) {
+                for (RedditPost post : reader.read(Files.readAllBytes(file)).posts()) {
+                    if ((post.title() + " " + post.selftext()).length() > 1400) continue;
+                    ListingClassifier.Classification classification = classifier.classify(post.title(), post.selftext());
+                    if (!classification.containsGPU() || classification.isSkipped()) continue;
+                    candidates.add(post.toCandidate());
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            System.out.println("No candidate posts under " + fixtures);
+            return;
+        }
+
+        int instructionTokens = ListingPromptBuilder.estimateTokens(ListingPromptBuilder.INSTRUCTIONS);
+        Totals before = totals(candidates, ListingCandidate::text,
+            texts -> ListingPromptBuilder.estimateTokens(ListingPromptBuilder.INSTRUCTIONS + "Reddit Listings:\n" + combined(texts)));
+        Totals after = totals(candidates, builder::listingText, texts -> {
+            int tokens = 0;
+            for (Map<String, Object> message : builder.messages(texts)) {
+                tokens += ListingPromptBuilder.estimateTokens(String.valueOf(message.get("content")));
+            }
+            return tokens;
+        });
+
+        // Every price the LLM answered with must survive trimming
+        int answers = 0;
+        int kept = 0;
+        List<String> lost = new ArrayList<>();
+        for (ListingCandidate candidate : candidates) {
+            List<Map<String, Object>> answer = recorded.get(candidate.redditPostId());
+            if (answer == null) continue;
+            String trimmed = builder.listingText(candidate);
+            for (Map<String, Object> pair : answer) {
+                answers++;
+                String price = String.valueOf(pair.get("price"));
+                if (trimmed.replace(",", "").contains(price)) kept++;
+                else lost.add(candidate.redditPostId() + " " + pair.get("model") + " @ " + price);
+            }
+        }
+
+        long start = System.nanoTime();
+        int rounds = 200;
+        for (int round = 0; round < rounds; round++) candidates.forEach(builder::listingText);
+        double microsPerPost = (System.nanoTime() - start) / 1e3 / rounds / candidates.size();
+
+        System.out.printf("%d candidate posts, instruction block ~%d tokens (the cacheable system message)%n",
+            candidates.size(), instructionTokens);
+        System.out.println("                 requests  tokens/request  listing-tokens/post");
+        System.out.printf("whole posts      %8d  %14.1f  %19.1f%n",
+            before.requests(), (double) before.promptTokens() / before.requests(), (double) before.listingTokens() / candidates.size());
+        System.out.printf("trimmed          %8d  %14.1f  %19.1f%n",
+            after.requests(), (double) after.promptTokens() / after.requests(), (double) after.listingTokens() / candidates.size());
+        System.out.printf("Listing tokens down %.1f%%, prompt tokens per request down %.1f%%, trimming takes %.1f us/post%n",
+            100.0 * (before.listingTokens() - after.listingTokens()) / before.listingTokens(),
+            100.0 * (before.promptTokens() * (double) after.requests() - after.promptTokens() * (double) before.requests())
+                / (before.promptTokens() * (double) after.requests()),
+            microsPerPost);
+        System.out.printf("Expected LLM prices still in the trimmed text: %d of %d%n", kept, answers);
+        lost.stream().limit(10).forEach(pair -> System.out.println("  lost " + pair));
+    }
+
+    private record Totals(int requests, long promptTokens, long listingTokens) {}
+
+    private static Totals totals(List<ListingCandidate> candidates, Function<ListingCandidate, String> text,
+                                 Function<List<String>, Integer> promptTokensOf) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentChars = 0;
+        long listingTokens = 0;
+        for (ListingCandidate candidate : candidates) {
+            String listing = text.apply(candidate);
+            listingTokens += ListingPromptBuilder.estimateTokens(listing);
+            if (!current.isEmpty() && (currentChars + listing.length() > BATCH_CHAR_BUDGET || current.size() >= MAX_POSTS_PER_BATCH)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentChars = 0;
+            }
+            current.add(listing);
+            currentChars += listing.length();
+        }
+        if (!current.isEmpty()) batches.add(current);
+
+        long promptTokens = 0;
+        for (List<String> batch : batches) promptTokens += promptTokensOf.apply(batch);
+        return new Totals(batches.size(), promptTokens, listingTokens);
+    }
+
+    private static String combined(List<String> texts) {
+        StringBuilder combined = new StringBuilder();
+        for (int i = 0; i < texts.size(); i++) {
+            if (i > 0) combined.append("\n\n");
+            combined.append("Listing ").append(i + 1).append(":\n").append(texts.get(i));
+        }
+        return combined.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.RedditPost;
+import com.example.demo.service.RedditPageReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a synthetic /r/hardwareswap/new fixture page with the streaming {@link RedditPageReader} and with
+ * the old approach (body read into a String, fresh ObjectMapper, full JsonNode tree). Run main()
+ * to get time plus the GC profiler's gc.alloc.rate.norm (bytes allocated per page).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedditPageReaderBenchmark {
+
+    private byte[] page;
+    private RedditPageReader reader;
+
+    @Setup
+    public void setup() throws Exception {
+        try (InputStream in = RedditPageReaderBenchmark.class.getResourceAsStream("/synthetic-fixtures/reddit/hardwareswap-new-page-1.json")) {
+            page = in.readAllBytes();
+        }
+        reader = new RedditPageReader(new ObjectMapper());
+    }
+
+    @Benchmark
+    public RedditPageReader.Page streamingReader() throws Exception {
+        return reader.read(page);
+    }
+
+    @Benchmark
+    public List<RedditPost> jsonNodeTree() throws Exception {
+        String body = new String(page, StandardCharsets.UTF_8);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode jsonNode = objectMapper.readTree(body);
+        List<RedditPost> posts = new ArrayList<>();
+        for (JsonNode post : jsonNode.path("data").path("children")) {
+            JsonNode postData = post.path("data");
+            String flair = postData.path("link_flair_text").asText("");
+            if (!RedditPageReader.isSaleFlair(flair)) continue;
+            posts.add(new RedditPost(
+                postData.path("id").asText(),
+                postData.path("title").asText(),
+                postData.path("selftext").asText(),
+                postData.path("url").asText(),
+                postData.path("created_utc").asLong(),
+                flair,
+                postData.path("author").asText()));
+        }
+        return posts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(RedditPageReaderBenchmark.class.getSimpleName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+}
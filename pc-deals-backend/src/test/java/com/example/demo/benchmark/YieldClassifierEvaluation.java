@@ -0,0 +1,133 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.model.RedditPost;
+import com.example.demo.service.ListingClassifier;
+import com.example.demo.service.ListingYieldClassifier;
+import com.example.demo.service.RedditPageReader;
+import com.example.demo.service.RuleBasedExtractionEngine;
+import com.example.demo.util.NaiveBayes;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Offline evaluation of {@link ListingYieldClassifier} on the fixture posts, labelled by whether
+ * the expected LLM answer (openai/extractions.json) has any listing. The bundled fixtures are
+ * synthetic, so the skip and miss rates it prints are best cases, not a measure on real posts. Scores every post
+ * with a model trained on the other folds (5-fold cross-validation), then for each threshold
+ * prints the share of posts that would skip the LLM and the share of yielding posts lost with
+ * them. The table is printed for all candidates and for the ones the rules are unsure about
+ * (the only ones the pre-classifier sees in ingestion), plus the time-ordered holdout the nightly
+ * retraining uses. Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.benchmark.YieldClassifierEvaluation [-Dexec.args="fixtures-dir rules-threshold"]
+ */
+public class YieldClassifierEvaluation {
+
+    private static final int FOLDS = 5;
+    private static final int MIN_FEATURE_COUNT = 2;
+    private static final double[] THRESHOLDS = {0.01, 0.02, 0.05, 0.1, 0.2, 0.3, 0.5};
+
+    private record Scored(ListingYieldClassifier.Example example, boolean unsure, double probability) {}
+
+    public static void main(String[] args) throws Exception {
+        Path fixtures = Path.of(args.length > 0 ? args[0] : "src/test/resources/synthetic-fixtures");
+        double rulesThreshold = args.length > 1 ? Double.parseDouble(args[1]) : 0.8;
+        ObjectMapper objectMapper = new ObjectMapper();
+        ListingClassifier classifier = new ListingClassifier();
+        RuleBasedExtractionEngine rules = new RuleBasedExtractionEngine(classifier);
+        RedditPageReader reader = new RedditPageReader(objectMapper);
+
+        Map<String, List<Map<String, Object>>> recorded = objectMapper.readValue(
+            fixtures.resolve("openai/extractions.json").toFile(), new TypeReference<>() {});
+
+        // Same filtering as the ingestion pipeline, limited to posts with a recorded LLM answer
+        List<ListingCandidate> candidates = new ArrayList<>();
+        try (Stream<Path> files = Files.list(fixtures.resolve("reddit"))) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".json")).sorted().toList()) {
+                for (RedditPost post : reader.read(Files.readAllBytes(file)).posts()) {
+                    if ((post.title() + " " + post.selftext()).length() > 1400) continue;
+                    ListingClassifier.Classification classification = classifier.classify(post.title(), post.selftext());
+                    if (!classification.containsGPU() || classification.isSkipped()) continue;
+                    if (recorded.containsKey(post.id())) candidates.add(post.toCandidate());
+                }
+            }
+        }
+        candidates.sort(Comparator.comparing(ListingCandidate::postedAt));
+        if (candidates.size() < FOLDS) {
+            System.out.println("Not enough fixture posts with LLM answers under " + fixtures);
+            return;
+        }
+
+        List<ListingYieldClassifier.Example> examples = new ArrayList<>();
+        List<Boolean> unsure = new ArrayList<>();
+        for (ListingCandidate candidate : candidates) {
+            examples.add(new ListingYieldClassifier.Example(
+                ListingYieldClassifier.features(classifier, candidate.title(), candidate.description()),
+                !recorded.get(candidate.redditPostId()).isEmpty()));
+            unsure.add(rules.extract(candidate).confidence() < rulesThreshold);
+        }
+
+        List<Scored> scored = new ArrayList<>();
+        for (int fold = 0; fold < FOLDS; fold++) {
+            List<ListingYieldClassifier.Example> training = new ArrayList<>();
+            for (int i = 0; i < examples.size(); i++) if (i % FOLDS != fold) training.add(examples.get(i));
+            NaiveBayes.Model model = ListingYieldClassifier.train(training, MIN_FEATURE_COUNT);
+            for (int i = fold; i < examples.size(); i += FOLDS) {
+                scored.add(new Scored(examples.get(i), unsure.get(i), model.probability(examples.get(i).features())));
+            }
+        }
+
+        long yielding = examples.stream().filter(ListingYieldClassifier.Example::yielded).count();
+        System.out.printf("%d fixture candidate posts, %d yield listings, %d yield none; %d the rules are unsure about%n",
+            examples.size(), yielding, examples.size() - yielding, unsure.stream().filter(b -> b).count());
+        System.out.println("5-fold cross-validation");
+        table("all candidates", scored);
+        table("rules unsure (< " + rulesThreshold + ")", scored.stream().filter(Scored::unsure).toList());
+
+        // What the nightly retraining checks: train on the oldest posts, evaluate on the newest
+        int split = (int) Math.round(examples.size() * 0.8);
+        NaiveBayes.Model older = ListingYieldClassifier.train(examples.subList(0, split), MIN_FEATURE_COUNT);
+        System.out.printf("Time-ordered holdout (newest %d posts)%n", examples.size() - split);
+        System.out.println("threshold  skipped  yielding lost");
+        for (double threshold : THRESHOLDS) {
+            ListingYieldClassifier.Evaluation evaluation =
+                ListingYieldClassifier.evaluate(older, examples.subList(split, examples.size()), threshold);
+            System.out.printf("%9.2f  %6.1f%%  %12.1f%%%n", threshold, 100 * evaluation.skippedShare(), 100 * evaluation.missedShare());
+        }
+
+        NaiveBayes.Model model = ListingYieldClassifier.train(examples, MIN_FEATURE_COUNT);
+        for (int i = 0; i < 50; i++) candidates.forEach(c -> model.probability(ListingYieldClassifier.features(classifier, c.title(), c.description())));
+        int rounds = 200;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (ListingCandidate candidate : candidates) {
+                model.probability(ListingYieldClassifier.features(classifier, candidate.title(), candidate.description()));
+            }
+        }
+        System.out.printf("Model over all posts: %d features, scoring takes %.1f us/post%n",
+            model.counts().size(), (System.nanoTime() - start) / 1e3 / rounds / candidates.size());
+    }
+
+    private static void table(String label, List<Scored> scored) {
+        long yielding = scored.stream().filter(s -> s.example().yielded()).count();
+        System.out.printf("  %s: %d posts, %d yielding%n", label, scored.size(), yielding);
+        System.out.println("  threshold  skipped  empty posts caught  yielding lost");
+        for (double threshold : THRESHOLDS) {
+            long skipped = scored.stream().filter(s -> s.probability() < threshold).count();
+            long missed = scored.stream().filter(s -> s.probability() < threshold && s.example().yielded()).count();
+            long empty = scored.size() - yielding;
+            System.out.printf("  %9.2f  %6.1f%%  %17.1f%%  %12.1f%%%n", threshold,
+                100.0 * skipped / Math.max(1, scored.size()),
+                100.0 * (skipped - missed) / Math.max(1, empty),
+                100.0 * missed / Math.max(1, yielding));
+        }
+    }
+}
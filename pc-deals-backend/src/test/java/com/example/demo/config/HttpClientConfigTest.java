@@ -0,0 +1,94 @@
+package com.example.demo.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpClientConfigTest {
+
+    private HttpServer server;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private volatile String acceptEncoding;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/gzip", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write("{\"ok\":true}".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                compressed.writeTo(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        connectionManager = HttpClientConfig.connectionManager(4, 2, Duration.ofSeconds(1), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void stopStub() {
+        connectionManager.close();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    void decodesGzipAndReusesPooledConnection() {
+        RestTemplate restTemplate = HttpClientConfig.restTemplate(connectionManager, Duration.ofSeconds(5), meterRegistry);
+
+        assertThat(restTemplate.getForObject(url("/gzip"), String.class)).isEqualTo("{\"ok\":true}");
+        assertThat(restTemplate.getForObject(url("/gzip"), String.class)).isEqualTo("{\"ok\":true}");
+
+        assertThat(acceptEncoding).contains("gzip");
+        assertThat(clientPorts).hasSize(1);
+        assertThat(meterRegistry.get("outbound.http.requests").tag("host", "127.0.0.1").tag("status", "200").timer().count())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void readTimeoutFailsInsteadOfHanging() {
+        RestTemplate restTemplate = HttpClientConfig.restTemplate(connectionManager, Duration.ofMillis(200), meterRegistry);
+
+        assertThatThrownBy(() -> restTemplate.getForObject(url("/slow"), String.class))
+            .isInstanceOf(ResourceAccessException.class);
+        assertThat(meterRegistry.get("outbound.http.requests").tag("status", "IO_ERROR").timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demo.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestBudgetTest {
+
+    private HttpServer server;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // Two requests left in a one second window
+        server.createContext("/paced", exchange -> {
+            calls.incrementAndGet();
+            exchange.getResponseHeaders().set("X-Ratelimit-Remaining", "2.0");
+            exchange.getResponseHeaders().set("X-Ratelimit-Reset", "1");
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        // Rate limited once, then fine
+        server.createContext("/limited", exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                exchange.sendResponseHeaders(204, -1);
+            }
+            exchange.close();
+        });
+        server.createContext("/down", exchange -> {
+            calls.incrementAndGet();
+            byte[] body = "down".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(503, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        connectionManager = HttpClientConfig.connectionManager(4, 2, Duration.ofSeconds(1), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void stopStub() {
+        connectionManager.close();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private RestTemplate restTemplate(RequestBudget budget) {
+        return HttpClientConfig.restTemplate(connectionManager, Duration.ofSeconds(5), meterRegistry, budget);
+    }
+
+    @Test
+    void spreadsRemainingRequestsOverTheWindow() {
+        RequestBudget budget = new RequestBudget("stub", 1, Duration.ofSeconds(5), 5,
+            Duration.ofSeconds(1), Duration.ofSeconds(1), meterRegistry);
+        RestTemplate restTemplate = restTemplate(budget);
+
+        restTemplate.getForEntity(url("/paced"), Void.class);
+        long start = System.nanoTime();
+        restTemplate.getForEntity(url("/paced"), Void.class);
+        restTemplate.getForEntity(url("/paced"), Void.class);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Two requests left in a second: the next one goes out right away, the one after about half a second later
+        assertThat(elapsedMillis).isBetween(400L, 900L);
+    }
+
+    @Test
+    void retriesAfterRetryAfter() {
+        RequestBudget budget = new RequestBudget("stub", 3, Duration.ofSeconds(5), 5,
+            Duration.ofSeconds(1), Duration.ofSeconds(1), meterRegistry);
+        RestTemplate restTemplate = restTemplate(budget);
+
+        long start = System.nanoTime();
+        budget.withRetries(() -> restTemplate.getForEntity(url("/limited"), Void.class));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(950L);
+        assertThat(meterRegistry.get("outbound.retries").tag("upstream", "stub").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void opensTheCircuitOnSustainedErrorsAndGivesUpAfterMaxWait() {
+        RequestBudget budget = new RequestBudget("stub", 3, Duration.ofMillis(300), 3,
+            Duration.ofSeconds(10), Duration.ofSeconds(10), meterRegistry);
+        RestTemplate restTemplate = restTemplate(budget);
+
+        assertThatThrownBy(() -> restTemplate.getForEntity(url("/down"), Void.class))
+            .isInstanceOf(HttpServerErrorException.ServiceUnavailable.class);
+        budget.record(503, new HttpHeaders());
+        budget.record(503, new HttpHeaders());
+        assertThat(budget.describe().get("circuit_open")).isEqualTo(true);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> restTemplate.getForEntity(url("/down"), Void.class))
+            .isInstanceOf(RequestBudget.UnavailableException.class);
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(290L);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("outbound.circuit.opened").tag("upstream", "stub").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void letsOneProbeThroughAndClosesOnSuccess() throws Exception {
+        RequestBudget budget = new RequestBudget("stub", 3, Duration.ofSeconds(2), 2,
+            Duration.ofMillis(200), Duration.ofMillis(400), meterRegistry);
+        budget.record(500, new HttpHeaders());
+        budget.record(500, new HttpHeaders());
+
+        long start = System.nanoTime();
+        budget.acquire();
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(190L);
+
+        // Failed probe: open again, for twice as long
+        budget.record(500, new HttpHeaders());
+        assertThat((Long) budget.describe().get("circuit_closes_in_ms")).isGreaterThan(300L);
+
+        budget.acquire();
+        budget.record(200, new HttpHeaders());
+        assertThat(budget.describe().get("circuit_open")).isEqualTo(false);
+        assertThat(budget.describe().get("consecutive_failures")).isEqualTo(0);
+    }
+}
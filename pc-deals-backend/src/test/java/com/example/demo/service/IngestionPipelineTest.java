@@ -0,0 +1,222 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GPU;
+import com.example.demo.model.ListingCandidate;
+import com.example.demo.model.RedditPost;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// A page lost between stages shows up as a writer that never finishes, hence the timeout
+@Timeout(20)
+class IngestionPipelineTest {
+
+    private final IngestionCheckpointService checkpoints = mock(IngestionCheckpointService.class);
+    private final GPUBatchWriter batchWriter = mock(GPUBatchWriter.class);
+    // Extraction answer per post id; a missing entry extracts nothing, a null value fails the post
+    private final Map<String, List<Map<String, Object>>> answers = new ConcurrentHashMap<>();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private Function<List<ListingCandidate>, List<List<Map<String, Object>>>> extraction = this::answer;
+    private IngestionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        ListingClassifier classifier = new ListingClassifier();
+        ListingValidator validator = new ListingValidator();
+        ReflectionTestUtils.setField(validator, "listingClassifier", classifier);
+        AtomicLong ids = new AtomicLong();
+        when(checkpoints.findProcessed(anyList())).thenReturn(Set.of());
+        when(batchWriter.insertAll(anyList())).thenAnswer(invocation -> {
+            List<GPU> inserted = new ArrayList<>(invocation.<List<GPU>>getArgument(0));
+            inserted.forEach(gpu -> gpu.setId(ids.incrementAndGet()));
+            return inserted;
+        });
+
+        pipeline = new IngestionPipeline();
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 2);
+        ReflectionTestUtils.setField(pipeline, "extractorThreads", 3);
+        ReflectionTestUtils.setField(pipeline, "alertThreads", 1);
+        ReflectionTestUtils.setField(pipeline, "drainTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(pipeline, "listingClassifier", classifier);
+        ReflectionTestUtils.setField(pipeline, "repostDetector", mock(RepostDetector.class));
+        ReflectionTestUtils.setField(pipeline, "extractionEngine", new ExtractionEngine() {
+            @Override
+            public String name() {
+                return "test";
+            }
+
+            @Override
+            public List<List<Map<String, Object>>> extractAll(List<ListingCandidate> candidates) {
+                return extraction.apply(candidates);
+            }
+        });
+        ReflectionTestUtils.setField(pipeline, "listingValidator", validator);
+        ReflectionTestUtils.setField(pipeline, "gpuBatchWriter", batchWriter);
+        ReflectionTestUtils.setField(pipeline, "ingestionCheckpointService", checkpoints);
+        ReflectionTestUtils.setField(pipeline, "notificationService", mock(NotificationService.class));
+        ReflectionTestUtils.setField(pipeline, "meterRegistry", new SimpleMeterRegistry());
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.drain();
+    }
+
+    @Test
+    void failedExtractionLeavesThePostUnprocessedAndTheCheckpointInPlace() throws InterruptedException {
+        answers.put("a1", List.of(listing("3080", 500)));
+        failing.add("a2");
+
+        IngestionPipeline.Run run = pipeline.newRun();
+        pipeline.submit(run, List.of(post("a1", "3080"), post("a2", "3070")), 100, "t3_a1", 1_700_000_000L);
+        List<GPU> saved = run.awaitSaved();
+
+        assertThat(saved).extracting(GPU::getRedditPostId).containsExactly("a1");
+        assertThat(run.failed()).isTrue();
+        verify(checkpoints).markProcessed(Map.of("a1", IngestionCheckpointService.Outcome.SAVED));
+        verify(checkpoints, never()).advance(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void emptyExtractionIsRecordedAsNoListings() throws InterruptedException {
+        IngestionPipeline.Run run = pipeline.newRun();
+        pipeline.submit(run, List.of(post("b1", "3080")), 100, "t3_b1", 1_700_000_000L);
+        run.awaitSaved();
+
+        assertThat(run.failed()).isFalse();
+        verify(checkpoints).markProcessed(Map.of("b1", IngestionCheckpointService.Outcome.NO_LISTINGS));
+        verify(checkpoints).advance(RedditService.CHECKPOINT_SOURCE, "t3_b1", 1_700_000_000L);
+    }
+
+    @Test
+    void pagesCommitInSubmissionOrderWhenExtractionFinishesOutOfOrder() throws Exception {
+        CountDownLatch firstPageHeld = new CountDownLatch(1);
+        extraction = candidates -> {
+            if (candidates.get(0).redditPostId().equals("c1")) await(firstPageHeld);
+            return answer(candidates);
+        };
+        answers.put("c1", List.of(listing("3080", 500)));
+        answers.put("c2", List.of(listing("3070", 300)));
+
+        IngestionPipeline.Run run = pipeline.newRun();
+        pipeline.submit(run, List.of(post("c1", "3080")), 100, "t3_c1", 1_700_000_100L);
+        pipeline.submit(run, List.of(post("c2", "3070")), 100, "t3_c2", 1_700_000_000L);
+        // The second page is extracted and validated but has to wait for the first
+        Thread.sleep(300);
+        verify(batchWriter, never()).insertAll(anyList());
+        firstPageHeld.countDown();
+
+        assertThat(run.awaitSaved()).extracting(GPU::getRedditPostId).containsExactly("c1", "c2");
+        InOrder order = inOrder(checkpoints);
+        order.verify(checkpoints).advance(RedditService.CHECKPOINT_SOURCE, "t3_c1", 1_700_000_100L);
+        order.verify(checkpoints).advance(RedditService.CHECKPOINT_SOURCE, "t3_c2", 1_700_000_000L);
+    }
+
+    @Test
+    void aFailedPageStopsTheCheckpointButLaterPagesAndRunsAreStillWritten() throws Exception {
+        answers.put("d1", List.of(listing("3080", 500)));
+        answers.put("d2", List.of(listing("3070", 300)));
+        answers.put("d3", List.of(listing("3090", 700)));
+        when(batchWriter.insertAll(argThat(listings -> listings.stream().anyMatch(gpu -> "d1".equals(gpu.getRedditPostId())))))
+            .thenThrow(new IllegalStateException("connection reset"));
+
+        IngestionPipeline.Run run = pipeline.newRun();
+        pipeline.submit(run, List.of(post("d1", "3080")), 100, "t3_d1", 1_700_000_100L);
+        pipeline.submit(run, List.of(post("d2", "3070")), 100, "t3_d2", 1_700_000_000L);
+
+        assertThat(run.awaitSaved()).extracting(GPU::getRedditPostId).containsExactly("d2");
+        assertThat(run.failed()).isTrue();
+        verify(checkpoints, never()).advance(anyString(), anyString(), anyLong());
+
+        IngestionPipeline.Run next = pipeline.newRun();
+        pipeline.submit(next, List.of(post("d3", "3090")), 100, "t3_d3", 1_700_000_200L);
+        assertThat(next.awaitSaved()).extracting(GPU::getRedditPostId).containsExactly("d3");
+        verify(checkpoints).advance(RedditService.CHECKPOINT_SOURCE, "t3_d3", 1_700_000_200L);
+    }
+
+    @Test
+    void anInterruptedSubmitDoesNotLeaveTheWriterWaitingForItsPage() throws Exception {
+        CountDownLatch filterHeld = new CountDownLatch(1);
+        when(checkpoints.findProcessed(anyList())).thenAnswer(invocation -> {
+            await(filterHeld);
+            return Set.of();
+        });
+        answers.put("e9", List.of(listing("3080", 500)));
+
+        // The filter stage holds one page and its queue takes two, so the fourth submit blocks
+        IngestionPipeline.Run run = pipeline.newRun();
+        for (int i = 1; i <= 3; i++) pipeline.submit(run, List.of(post("e" + i, "3080")), 100, null, 0);
+        AtomicReference<Throwable> outcome = new AtomicReference<>();
+        Thread submitter = new Thread(() -> {
+            try {
+                pipeline.submit(run, List.of(post("e4", "3080")), 100, null, 0);
+            } catch (Throwable e) {
+                outcome.set(e);
+            }
+        });
+        submitter.start();
+        Thread.sleep(200);
+        submitter.interrupt();
+        submitter.join(5000);
+        assertThat(outcome.get()).isInstanceOf(InterruptedException.class);
+
+        filterHeld.countDown();
+        run.awaitSaved();
+        IngestionPipeline.Run next = pipeline.newRun();
+        pipeline.submit(next, List.of(post("e9", "3080")), 100, "t3_e9", 1_700_000_000L);
+        assertThat(next.awaitSaved()).extracting(GPU::getRedditPostId).containsExactly("e9");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<List<Map<String, Object>>> answer(List<ListingCandidate> candidates) {
+        List<List<Map<String, Object>>> results = new ArrayList<>();
+        for (ListingCandidate candidate : candidates) {
+            results.add(failing.contains(candidate.redditPostId()) ? null
+                : answers.getOrDefault(candidate.redditPostId(), List.of()));
+        }
+        return results;
+    }
+
+    static RedditPost post(String id, String model) {
+        return new RedditPost(id, "[USA-CA] [H] RTX " + model + " [W] PayPal", "Selling my " + model + ", $500 shipped",
+            "https://reddit.com/" + id, 1_700_000_000L, "SELLING", "seller");
+    }
+
+    static Map<String, Object> listing(String model, int price) {
+        return Map.of("model", model, "price", price, "listing_id", "Listing 1");
+    }
+}
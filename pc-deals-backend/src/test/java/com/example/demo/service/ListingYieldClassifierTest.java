@@ -0,0 +1,69 @@
+package com.example.demo.service;
+
+import com.example.demo.util.NaiveBayes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ListingYieldClassifierTest {
+
+    private static final double EXPLORE_RATE = 0.05;
+    private static final double THRESHOLD = 0.02;
+
+    private static final List<String> SELLING = List.of("h:3080", "b:shipped", "b:$#");
+    private static final List<String> BUYING = List.of("w:3080", "b:paypal", "b:looking");
+
+    @Test
+    void skippedYieldingPostsCountInTheHoldoutThroughTheirExploredStandIns() {
+        // The active model learned that buying-shaped posts are empty, so it skips them
+        NaiveBayes.Model active = ListingYieldClassifier.train(history(), 2);
+        assertThat(active.probability(BUYING)).isLessThan(THRESHOLD);
+
+        // Since then 20 buying-shaped posts did yield listings. The model skipped 19 of them, which
+        // never reached the training data; the one explored post is all that was stored
+        List<ListingYieldClassifier.Example> holdout = new ArrayList<>();
+        for (int i = 0; i < 20; i++) holdout.add(ListingYieldClassifier.example(SELLING, true, false, EXPLORE_RATE));
+        holdout.add(ListingYieldClassifier.example(BUYING, true, true, EXPLORE_RATE));
+
+        ListingYieldClassifier.Evaluation evaluation = ListingYieldClassifier.evaluate(active, holdout, THRESHOLD);
+        // 20 yielding posts let through, 20 skipped: half of what yielded was lost, not 1 in 21
+        assertThat(evaluation.missedShare()).isCloseTo(0.5, within(1e-9));
+        assertThat(evaluation.posts()).isCloseTo(40, within(1e-9));
+    }
+
+    @Test
+    void exploredPostsWeighTrainingLikeThePostsTheyStandFor() {
+        List<ListingYieldClassifier.Example> examples = new ArrayList<>(history());
+        examples.add(ListingYieldClassifier.example(BUYING, true, true, EXPLORE_RATE));
+        List<ListingYieldClassifier.Example> copies = new ArrayList<>(history());
+        for (int i = 0; i < 20; i++) copies.add(new ListingYieldClassifier.Example(BUYING, true));
+
+        NaiveBayes.Model weighted = ListingYieldClassifier.train(examples, 2);
+        NaiveBayes.Model repeated = ListingYieldClassifier.train(copies, 2);
+        assertThat(weighted.probability(BUYING)).isCloseTo(repeated.probability(BUYING), within(1e-9));
+    }
+
+    @Test
+    void modelsStoredWithIntegerCountsStillLoad() throws Exception {
+        String stored = "{\"positives\":3,\"negatives\":2,\"positiveTotal\":4,\"negativeTotal\":2," +
+            "\"counts\":{\"h:3080\":[3,0],\"w:3080\":[1,2]}}";
+        NaiveBayes.Model model = new ObjectMapper().readValue(stored, NaiveBayes.Model.class);
+
+        assertThat(model.counts().get("w:3080")).containsExactly(1, 2);
+        assertThat(model.probability(List.of("h:3080"))).isGreaterThan(0.5);
+    }
+
+    private static List<ListingYieldClassifier.Example> history() {
+        List<ListingYieldClassifier.Example> examples = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            examples.add(new ListingYieldClassifier.Example(SELLING, true));
+            examples.add(new ListingYieldClassifier.Example(BUYING, false));
+        }
+        return examples;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.service;
+
+import com.example.demo.model.ListingCandidate;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class RuleBasedExtractionEngineTest {
+
+    private final RuleBasedExtractionEngine engine = new RuleBasedExtractionEngine(new ListingClassifier());
+
+    // Title, body, expected model -> price, and the range the confidence must fall in
+    static Stream<Arguments> posts() {
+        return Stream.of(
+            arguments("[USA-CA] [H] RTX 3080 [W] PayPal", "3080 - $450 shipped, $420 local",
+                Map.of("3080", 450), 0.95, 0.95),
+            arguments("[W] RTX 3080 [H] PayPal", "Looking for a 3080, paying $450 shipped",
+                Map.of(), 0.5, 0.5),
+            arguments("[USA-TX] [H] RTX 3070 [W] RTX 3080, PayPal", "3070 $300 shipped, can add cash for a 3080",
+                Map.of("3070", 300), 0.95, 0.95),
+            arguments("[USA-NY] [H] RTX 3080 [W] PayPal, Local Cash", "3080: $420 local or $450 shipped",
+                Map.of("3080", 450), 0.95, 0.95),
+            arguments("[USA-NY] [H] RTX 3080 [W] Local Cash", "3080 for $420 local only",
+                Map.of("3080", 420), 0.6, 0.6),
+            arguments("[USA-WA] [H] RTX 3080, RTX 3070 [W] PayPal", "3080 - $450 shipped\n3070 - $300 shipped",
+                Map.of("3080", 450, "3070", 300), 0.9, 0.9),
+            arguments("[USA-WA] [H] RTX 3080, RTX 3070 [W] PayPal", "3080 - $450 shipped\n3070 is already sold",
+                Map.of("3080", 450), 0.2, 0.2),
+            arguments("[USA-FL] [H] RTX 3080 untested [W] PayPal", "3080 - $300 shipped",
+                Map.of("3080", 300), 0.0, 0.3),
+            arguments("[USA-FL] [H] RTX 3080 [W] PayPal", "3080 - $450 shipped OBO",
+                Map.of("3080", 450), 0.0, 0.3),
+            arguments("[USA-FL] [H] RTX 3080 [W] PayPal", "3080 - $300 shipped, artifacting after an hour",
+                Map.of("3080", 300), 0.0, 0.3),
+            arguments("[USA-FL] [H] RTX 3080 [W] PayPal", "3080 - $450 shipped, comes with the Robot Arm GPU bracket",
+                Map.of("3080", 450), 0.95, 0.95),
+            arguments("[USA-FL] [H] RTX 3080 [W] PayPal", "3080 - $450 shipped. No combos, GPU only",
+                Map.of("3080", 450), 0.95, 0.95),
+            arguments("[USA-FL] [H] RTX 3080 [W] PayPal", "Comes with the box.\n$450 shipped",
+                Map.of("3080", 450), 0.8, 0.8)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("posts")
+    void extractsWhatTheRulesAreSureOf(String title, String body, Map<String, Integer> expected,
+                                       double minConfidence, double maxConfidence) {
+        RuleBasedExtractionEngine.Extraction extraction = engine.extract(
+            new ListingCandidate("p1", title, body, "https://reddit.com/p1", null, "seller"));
+
+        Map<String, Integer> prices = new LinkedHashMap<>();
+        for (Map<String, Object> listing : extraction.listings()) {
+            prices.put((String) listing.get("model"), (Integer) listing.get("price"));
+        }
+        assertThat(prices).isEqualTo(expected);
+        assertThat(extraction.confidence()).isBetween(minConfidence, maxConfidence);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RollingStatsTest {
+
+    private static final long HOUR = 3600;
+
+    @Test
+    void matchesTwoPassStatisticsOverTheWindow() {
+        RollingStats stats = new RollingStats(168, HOUR);
+        Random random = new Random(7);
+        long now = 1_760_000_000L;
+        List<Integer> inWindow = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            long postedAt = now - random.nextInt(10 * 24 * 3600);
+            int price = 400 + random.nextInt(300);
+            stats.add(postedAt, price, now);
+            if (postedAt >= RollingStats.windowStart(now, 168, HOUR)) inWindow.add(price);
+        }
+
+        double mean = inWindow.stream().mapToInt(Integer::intValue).average().orElseThrow();
+        double squares = inWindow.stream().mapToDouble(price -> (price - mean) * (price - mean)).sum();
+        RollingStats.Summary summary = stats.summary(now);
+        assertThat(summary.count()).isEqualTo(inWindow.size());
+        assertThat(summary.mean()).isCloseTo(mean, within(1e-9));
+        assertThat(summary.stddev()).isCloseTo(Math.sqrt(squares / (inWindow.size() - 1)), within(1e-9));
+    }
+
+    @Test
+    void oldBucketsLeaveTheWindowAndTheirSlotsAreReused() {
+        RollingStats stats = new RollingStats(3, HOUR);
+        long now = 100 * HOUR;
+        stats.add(now - 2 * HOUR, 100, now);
+        stats.add(now, 200, now);
+        assertThat(stats.summary(now).count()).isEqualTo(2);
+
+        // Two hours later only the 200 is left; the 300 goes into the slot the 100 was in
+        long later = now + 2 * HOUR;
+        assertThat(stats.summary(later).mean()).isEqualTo(200);
+        stats.add(later + 60, 300, later);
+        RollingStats.Summary summary = stats.summary(later);
+        assertThat(summary.count()).isEqualTo(2);
+        assertThat(summary.mean()).isEqualTo(250);
+
+        // Too old for the window: ignored
+        stats.add(later - 3 * HOUR, 1000, later);
+        assertThat(stats.summary(later).count()).isEqualTo(2);
+        assertThat(Double.isNaN(new RollingStats(3, HOUR).summary(later).stddev())).isTrue();
+    }
+}